@@ -0,0 +1,79 @@
+package com.pipeline;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+public class BenchmarkData {
+    static final int MEGABYTE = 1024 * 1024;
+
+    public enum Distribution {
+        // random bytes, almost no runs
+        HIGH_ENTROPY,
+        // runs of 1-8 equal bytes
+        SHORT_RUNS,
+        // runs of 1-300 equal bytes
+        LONG_RUNS,
+        // random bytes and long runs one after another
+        MIXED
+    }
+
+    static byte[] generate(Distribution distribution, int size) {
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        switch (distribution) {
+            case HIGH_ENTROPY:
+                random.nextBytes(data);
+                break;
+            case SHORT_RUNS:
+                fillRuns(random, data, 0, size, 8);
+                break;
+            case LONG_RUNS:
+                fillRuns(random, data, 0, size, 300);
+                break;
+            case MIXED:
+                for (int i = 0; i < size; ) {
+                    int end = Integer.min(size, i + 1 + random.nextInt(4096));
+                    if (random.nextBoolean())
+                        fillRuns(random, data, i, end, 300);
+                    else
+                        for (int j = i; j < end; ++j)
+                            data[j] = (byte) random.nextInt();
+                    i = end;
+                }
+                break;
+        }
+        return data;
+    }
+
+    private static void fillRuns(Random random, byte[] data, int from, int to, int maxRun) {
+        for (int i = from; i < to; ) {
+            byte val = (byte) random.nextInt();
+            int end = Integer.min(to, i + 1 + random.nextInt(maxRun));
+            while (i < end)
+                data[i++] = val;
+        }
+    }
+
+    static File writeFile(byte[] data) throws IOException {
+        File file = File.createTempFile("benchmark", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+        return file;
+    }
+
+    // stages are configured by files only, so the config is written to a temporary one
+    static String writeConfig(String... lines) throws IOException {
+        File file = File.createTempFile("benchmark", ".txt");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            for (String line : lines)
+                writer.write(line + System.lineSeparator());
+        }
+        return file.getPath();
+    }
+}
@@ -0,0 +1,18 @@
+package com.pipeline;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs benchmarks with the usual JMH command line and always adds the GC profiler,
+// so allocation rate (gc.alloc.rate, gc.alloc.rate.norm) is reported next to MB/s.
+// Must be started from the project root, pipeline benchmarks use configs from Manager/configs.
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,37 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+// Gives the same block to the consumer on every consume() call, without copying it
+class BlockProvider implements IProvider {
+    private final TYPE[] supportedTypes = { TYPE.BYTE_ARRAY };
+    byte[] block;
+
+    BlockProvider(byte[] block) {
+        this.block = block;
+    }
+
+    @Override
+    public RC setConsumer(IConsumer iConsumer) {
+        return iConsumer.setProvider(this);
+    }
+
+    @Override
+    public TYPE[] getOutputTypes() {
+        return supportedTypes;
+    }
+
+    @Override
+    public IMediator getMediator(TYPE type) {
+        if (type != TYPE.BYTE_ARRAY)
+            return null;
+
+        class BlockMediator implements IMediator {
+            @Override
+            public Object getData() {
+                return block;
+            }
+        }
+        return new BlockMediator();
+    }
+}
@@ -0,0 +1,25 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.io.ByteArrayOutputStream;
+
+// Collects all the data from the provider, used to prepare inputs of benchmarks
+class CollectingConsumer implements IConsumer {
+    private IMediator mediator;
+    final ByteArrayOutputStream collected = new ByteArrayOutputStream();
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        mediator = iProvider.getMediator(TYPE.BYTE_ARRAY);
+        return mediator != null ? RC.RC_SUCCESS : RC.RC_WRITER_TYPES_INTERSECTION_EMPTY_ERROR;
+    }
+
+    @Override
+    public RC consume() {
+        byte[] data = (byte[]) mediator.getData();
+        if (data != null)
+            collected.write(data, 0, data.length);
+        return RC.RC_SUCCESS;
+    }
+}
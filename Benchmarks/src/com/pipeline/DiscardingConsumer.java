@@ -0,0 +1,37 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+// Takes the data from the provider and throws it away, only the count of bytes is kept
+class DiscardingConsumer implements IConsumer {
+    private IMediator mediator;
+    private ILeasingMediator leasingMediator;
+    long bytes = 0;
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        mediator = iProvider.getMediator(TYPE.BYTE_ARRAY);
+        if (mediator == null)
+            return RC.RC_WRITER_TYPES_INTERSECTION_EMPTY_ERROR;
+        if (mediator instanceof ILeasingMediator)
+            leasingMediator = (ILeasingMediator) mediator;
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC consume() {
+        if (leasingMediator != null) {
+            ByteSlice slice = leasingMediator.lease();
+            if (slice != null) {
+                bytes += slice.length;
+                slice.release();
+            }
+        }
+        else {
+            byte[] data = (byte[]) mediator.getData();
+            if (data != null)
+                bytes += data.length;
+        }
+        return RC.RC_SUCCESS;
+    }
+}
@@ -0,0 +1,77 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IConsumer;
+import com.java_polytech.pipeline_interfaces.RC;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// RLE coding of 1 MB of raw data per operation (for decoding the input is 1 MB encoded beforehand).
+// To get the numbers for the byte-at-a-time coders run it with Manager/artifacts/Executor.jar
+// on the classpath instead of the Executor module.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+    @Param({ "ENCODE", "DECODE" })
+    public String mode;
+
+    @Param({ "HIGH_ENTROPY", "SHORT_RUNS", "LONG_RUNS", "MIXED" })
+    public BenchmarkData.Distribution distribution;
+
+    // 0 for the stream format, otherwise BLOCK_SIZE of the framed format
+    @Param({ "0", "262144" })
+    public int blockSize;
+
+    private Executor executor;
+
+    private String[] config(String mode) {
+        if (blockSize == 0)
+            return new String[] { "BUFFER_SIZE = 65536", "MODE = " + mode };
+        return new String[] { "BUFFER_SIZE = 65536", "MODE = " + mode, "BLOCK_SIZE = " + blockSize };
+    }
+
+    private Executor create(String mode, IConsumer consumer) throws IOException {
+        Executor created = new Executor();
+        RC rc = created.setConfig(BenchmarkData.writeConfig(config(mode)));
+        if (rc.isSuccess())
+            rc = created.setConsumer(consumer);
+        if (!rc.isSuccess())
+            throw new IllegalStateException(rc.info);
+        return created;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] input = BenchmarkData.generate(distribution, BenchmarkData.MEGABYTE);
+        if (mode.equals("DECODE")) {
+            CollectingConsumer collector = new CollectingConsumer();
+            Executor encoder = create("ENCODE", collector);
+            BlockProvider provider = new BlockProvider(input);
+            RC rc = provider.setConsumer(encoder);
+            if (rc.isSuccess())
+                rc = encoder.consume();
+            provider.block = null;
+            if (rc.isSuccess())
+                rc = encoder.consume();
+            if (!rc.isSuccess())
+                throw new IllegalStateException(rc.info);
+            input = collector.collected.toByteArray();
+        }
+
+        executor = create(mode, new DiscardingConsumer());
+        RC rc = new BlockProvider(input).setConsumer(executor);
+        if (!rc.isSuccess())
+            throw new IllegalStateException(rc.info);
+    }
+
+    @Benchmark
+    public RC code(Throughput throughput) {
+        throughput.add(BenchmarkData.MEGABYTE);
+        return executor.consume();
+    }
+}
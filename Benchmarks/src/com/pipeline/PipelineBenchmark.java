@@ -0,0 +1,87 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.RC;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Whole Manager pipelines over Manager/test/img.bmp, all stages get buffers of bufferSize bytes.
+// RLE_AC is the chain from manager_config.txt and needs Manager/libs on the classpath.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final String INPUT_FILE = "Manager/test/img.bmp";
+    private static final String RLE = "com.pipeline.Executor";
+    private static final String AC = "com.java_polytech.pipeline.ACExecutor";
+
+    @Param({ "RLE", "RLE_AC" })
+    public String pipeline;
+
+    @Param({ "sequential", "parallel" })
+    public String pipelineMode;
+
+    @Param({ "100", "4096", "65536" })
+    public int bufferSize;
+
+    private String managerConfig;
+    private long inputSize;
+    private Manager manager;
+
+    @Setup
+    public void setUp() throws IOException {
+        inputSize = new File(INPUT_FILE).length();
+        String streamConfig = BenchmarkData.writeConfig("BUFFER_SIZE = " + bufferSize);
+        String rleEncode = BenchmarkData.writeConfig("BUFFER_SIZE = " + bufferSize, "MODE = encode");
+        String rleDecode = BenchmarkData.writeConfig("BUFFER_SIZE = " + bufferSize, "MODE = decode");
+
+        String executors;
+        String configs;
+        if (pipeline.equals("RLE")) {
+            executors = RLE + ", " + RLE;
+            configs = rleEncode + ", " + rleDecode;
+        }
+        else {
+            String acEncode = BenchmarkData.writeConfig("MODE = encode", "OUT_BUFFER_SIZE = " + bufferSize);
+            String acDecode = BenchmarkData.writeConfig("MODE = decode", "OUT_BUFFER_SIZE = " + bufferSize);
+            executors = RLE + ", " + AC + ", " + AC + ", " + RLE;
+            configs = rleEncode + ", " + acEncode + ", " + acDecode + ", " + rleDecode;
+        }
+
+        File output = File.createTempFile("benchmark", ".bin");
+        output.deleteOnExit();
+        File log = File.createTempFile("benchmark", ".log");
+        log.deleteOnExit();
+        managerConfig = BenchmarkData.writeConfig(
+                "INPUT_FILE = " + INPUT_FILE,
+                "OUTPUT_FILE = " + output.getPath(),
+                "READER_NAME = com.pipeline.Reader",
+                "WRITER_NAME = com.pipeline.Writer",
+                "EXECUTORS_NAMES = " + executors,
+                "READER_CONFIG = " + streamConfig,
+                "EXECUTORS_CONFIGS = " + configs,
+                "WRITER_CONFIG = " + streamConfig,
+                "LOG_FILE = " + log.getPath(),
+                "PIPELINE_MODE = " + pipelineMode);
+    }
+
+    // construction of the pipeline opens the files, so it is done for every run but not measured
+    @Setup(Level.Invocation)
+    public void createManager() {
+        manager = new Manager();
+        RC rc = manager.setConfig(managerConfig);
+        if (!rc.isSuccess())
+            throw new IllegalStateException(rc.info);
+    }
+
+    @Benchmark
+    public RC run(Throughput throughput) {
+        throughput.add(inputSize);
+        return manager.runPipeline();
+    }
+}
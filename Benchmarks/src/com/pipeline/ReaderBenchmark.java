@@ -0,0 +1,51 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IReader;
+import com.java_polytech.pipeline_interfaces.RC;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Reading of a 16 MB file per operation, the data is thrown away by the consumer
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+    private static final int FILE_SIZE = 16 * BenchmarkData.MEGABYTE;
+
+    @Param({ "com.pipeline.Reader", "com.pipeline.MappedReader" })
+    public String readerName;
+
+    @Param({ "100", "4096", "65536", "1048576" })
+    public int bufferSize;
+
+    private File input;
+    private IReader reader;
+
+    @Setup
+    public void setUp() throws Exception {
+        input = BenchmarkData.writeFile(BenchmarkData.generate(BenchmarkData.Distribution.MIXED, FILE_SIZE));
+        reader = (IReader) Class.forName(readerName).getDeclaredConstructor().newInstance();
+        RC rc = reader.setConfig(BenchmarkData.writeConfig("BUFFER_SIZE = " + bufferSize));
+        if (rc.isSuccess())
+            rc = reader.setConsumer(new DiscardingConsumer());
+        if (!rc.isSuccess())
+            throw new IllegalStateException(rc.info);
+    }
+
+    @Benchmark
+    public RC read(Throughput throughput) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(input)) {
+            reader.setInputStream(inputStream);
+            RC rc = reader.run();
+            throughput.add(FILE_SIZE);
+            return rc;
+        }
+    }
+}
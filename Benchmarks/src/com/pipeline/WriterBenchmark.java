@@ -0,0 +1,66 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IWriter;
+import com.java_polytech.pipeline_interfaces.RC;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Writing of a 16 MB file per operation, the writer gets it by blocks of incomingBlockSize bytes
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterBenchmark {
+    private static final int FILE_SIZE = 16 * BenchmarkData.MEGABYTE;
+
+    @Param({ "com.pipeline.Writer", "com.pipeline.ChannelWriter" })
+    public String writerName;
+
+    @Param({ "100", "4096", "65536", "1048576" })
+    public int bufferSize;
+
+    @Param({ "431", "65536" })
+    public int incomingBlockSize;
+
+    private File output;
+    private byte[] block;
+    private BlockProvider provider;
+    private IWriter writer;
+
+    @Setup
+    public void setUp() throws Exception {
+        output = File.createTempFile("benchmark", ".bin");
+        output.deleteOnExit();
+        block = BenchmarkData.generate(BenchmarkData.Distribution.MIXED, incomingBlockSize);
+        provider = new BlockProvider(block);
+        writer = (IWriter) Class.forName(writerName).getDeclaredConstructor().newInstance();
+        RC rc = writer.setConfig(BenchmarkData.writeConfig("BUFFER_SIZE = " + bufferSize));
+        if (rc.isSuccess())
+            rc = provider.setConsumer(writer);
+        if (!rc.isSuccess())
+            throw new IllegalStateException(rc.info);
+    }
+
+    @Benchmark
+    public RC write(Throughput throughput) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(output)) {
+            writer.setOutputStream(outputStream);
+            provider.block = block;
+            RC rc = RC.RC_SUCCESS;
+            int written = 0;
+            for (; written + incomingBlockSize <= FILE_SIZE && rc.isSuccess(); written += incomingBlockSize)
+                rc = writer.consume();
+            provider.block = null;
+            if (rc.isSuccess())
+                rc = writer.consume();
+            throughput.add(written);
+            return rc;
+        }
+    }
+}
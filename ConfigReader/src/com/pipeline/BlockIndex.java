@@ -0,0 +1,122 @@
+package com.pipeline;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+// Index of the frames of a stream coded by independent blocks, so a range of the raw data is decoded
+// from the frames which cover it instead of from the start of the stream.
+// All frames but the last one have blockSize raw bytes, so frame i starts at raw offset i * blockSize.
+// The index is written after the last frame as a trailer which looks like a frame with no raw bytes,
+// so decoders which stream the whole file skip it. All numbers are big-endian:
+//     int 0, int length of the rest of the trailer,
+//     int block size, long raw size, int frames count, long encoded offset of every frame,
+//     long offset of the trailer, int MAGIC
+// The last TAIL_SIZE bytes of the file lead to the start of the trailer.
+public class BlockIndex {
+    private static final int MAGIC = 0x424C4958;
+    private static final int TAIL_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private final int blockSize;
+    private long rawSize;
+    private long[] offsets = new long[16];
+    private int framesCount = 0;
+    // where the frames end
+    private long trailerOffset;
+
+    public BlockIndex(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getRawSize() {
+        return rawSize;
+    }
+
+    public int getFramesCount() {
+        return framesCount;
+    }
+
+    public long getFrameStart(int frame) {
+        return offsets[frame];
+    }
+
+    public long getFrameEnd(int frame) {
+        return frame + 1 < framesCount ? offsets[frame + 1] : trailerOffset;
+    }
+
+    public void addFrame(long offset) {
+        if (framesCount == offsets.length)
+            offsets = Arrays.copyOf(offsets, 2 * framesCount);
+        offsets[framesCount++] = offset;
+    }
+
+    public byte[] toTrailer(long trailerOffset, long rawSize) {
+        int dataSize = Integer.BYTES + Long.BYTES + Integer.BYTES + framesCount * Long.BYTES + TAIL_SIZE;
+        ByteBuffer trailer = ByteBuffer.allocate(HEADER_SIZE + dataSize);
+        trailer.putInt(0).putInt(dataSize);
+        trailer.putInt(blockSize).putLong(rawSize).putInt(framesCount);
+        for (int i = 0; i < framesCount; ++i)
+            trailer.putLong(offsets[i]);
+        trailer.putLong(trailerOffset).putInt(MAGIC);
+        return trailer.array();
+    }
+
+    // null if the file does not end with an index
+    public static BlockIndex read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE + TAIL_SIZE)
+            return null;
+        ByteBuffer tail = ByteBuffer.allocate(TAIL_SIZE);
+        readFully(channel, tail, size - TAIL_SIZE);
+        long trailerOffset = tail.getLong();
+        if (tail.getInt() != MAGIC || trailerOffset < 0 || trailerOffset > size - HEADER_SIZE - TAIL_SIZE)
+            return null;
+
+        ByteBuffer trailer = ByteBuffer.allocate((int) Long.min(size - trailerOffset - TAIL_SIZE, Integer.MAX_VALUE));
+        readFully(channel, trailer, trailerOffset);
+        if (trailer.getInt() != 0 || trailer.getInt() != size - trailerOffset - HEADER_SIZE)
+            return null;
+        BlockIndex index = new BlockIndex(trailer.getInt());
+        index.rawSize = trailer.getLong();
+        int framesCount = trailer.getInt();
+        if (index.blockSize <= 0 || framesCount < 0 || trailer.remaining() != (long) framesCount * Long.BYTES)
+            return null;
+        index.offsets = new long[Integer.max(framesCount, 1)];
+        for (int i = 0; i < framesCount; ++i)
+            index.addFrame(trailer.getLong());
+        index.trailerOffset = trailerOffset;
+        return index;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+        buffer.flip();
+    }
+
+    // the frames of a stream which is not finished yet, for checkpoints
+    public void save(DataOutput state) throws IOException {
+        state.writeInt(framesCount);
+        for (int i = 0; i < framesCount; ++i)
+            state.writeLong(offsets[i]);
+    }
+
+    public void restore(DataInput state) throws IOException {
+        int count = state.readInt();
+        if (count < 0)
+            throw new IOException("Invalid frames count");
+        framesCount = 0;
+        for (int i = 0; i < count; ++i)
+            addFrame(state.readLong());
+    }
+}
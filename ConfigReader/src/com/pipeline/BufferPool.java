@@ -0,0 +1,47 @@
+package com.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Pool of equally sized slices, so a stage does not allocate a new array for every block.
+// Slices may be released from another thread (parallel pipeline mode).
+public class BufferPool {
+    // shared pools keep no more free slices than fit into this
+    private static final int MAX_SHARED_FREE_BYTES = 64 * 1024 * 1024;
+    private static final int MIN_SHARED_FREE_SLICES = 4;
+    private static final ConcurrentHashMap<Integer, BufferPool> sharedPools = new ConcurrentHashMap<>();
+
+    private final int bufferSize;
+    private final int maxFree;
+    private final ArrayDeque<ByteSlice> free = new ArrayDeque<>();
+
+    public BufferPool(int bufferSize) {
+        this(bufferSize, Integer.MAX_VALUE);
+    }
+
+    private BufferPool(int bufferSize, int maxFree) {
+        this.bufferSize = bufferSize;
+        this.maxFree = maxFree;
+    }
+
+    // pool of the size shared by the stages of all pipelines in the process,
+    // so pipelines which run one after another reuse the buffers of the finished ones
+    public static BufferPool shared(int bufferSize) {
+        return sharedPools.computeIfAbsent(bufferSize,
+                size -> new BufferPool(size, Integer.max(MIN_SHARED_FREE_SLICES, MAX_SHARED_FREE_BYTES / size)));
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public synchronized ByteSlice acquire() {
+        ByteSlice slice = free.pollFirst();
+        return slice != null ? slice : new ByteSlice(this, bufferSize);
+    }
+
+    synchronized void release(ByteSlice slice) {
+        if (free.size() < maxFree)
+            free.addFirst(slice);
+    }
+}
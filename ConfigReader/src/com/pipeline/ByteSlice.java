@@ -0,0 +1,19 @@
+package com.pipeline;
+
+// Buffer from a BufferPool with the count of meaningful bytes in it.
+// Whoever holds a slice owns it and must call release() when the data is not needed anymore.
+public class ByteSlice {
+    public final byte[] array;
+    public int length = 0;
+    private final BufferPool pool;
+
+    ByteSlice(BufferPool pool, int capacity) {
+        this.pool = pool;
+        array = new byte[capacity];
+    }
+
+    public void release() {
+        length = 0;
+        pool.release(this);
+    }
+}
@@ -3,15 +3,34 @@ package com.pipeline;
 import com.java_polytech.pipeline_interfaces.RC;
 
 import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ConfigReader {
+    private static class ParsedConfig {
+        final byte[] content;
+        final HashMap<String, String> params;
+
+        ParsedConfig(byte[] content, HashMap<String, String> params) {
+            this.content = content;
+            this.params = params;
+        }
+    }
+
+    // every pipeline of a batch or of the server reads the same configs, so they are parsed
+    // once per grammar and file and parsed again only when the content of the file is changed.
+    // The content is compared and not the modification time, which may stay the same after a quick edit
+    private static final ConcurrentHashMap<String, ParsedConfig> parsedConfigs = new ConcurrentHashMap<>();
+
     private final IConfigGrammar grammar;
     private final RC.RCWho owner;
-    private final HashMap<String, String> params = new HashMap<>();
+    private HashMap<String, String> params = new HashMap<>();
 
     public ConfigReader(RC.RCWho owner, IConfigGrammar grammar) {
         this.grammar = grammar;
@@ -19,8 +38,33 @@ public class ConfigReader {
     }
 
     public RC read (String configFile) {
+        File file = new File(configFile);
+        if (!file.isFile() || !file.canRead())
+            return new RC(owner, RC.RCType.CODE_CONFIG_FILE_ERROR, "Could not open " + configFile);
+        byte[] content;
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(configFile));
+            content = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return new RC(owner, RC.RCType.CODE_FAILED_TO_READ, "Could not read " + configFile);
+        }
+
+        // every reader has its own copy of the parameters, the cached ones are never changed
+        String key = grammar.getClass().getName() + File.pathSeparator + file.getAbsolutePath();
+        ParsedConfig parsed = parsedConfigs.get(key);
+        if (parsed != null && Arrays.equals(parsed.content, content)) {
+            params = new HashMap<>(parsed.params);
+            return RC.RC_SUCCESS;
+        }
+
+        RC rc = parse(configFile, new String(content, Charset.defaultCharset()));
+        if (rc.isSuccess())
+            parsedConfigs.put(key, new ParsedConfig(content, new HashMap<>(params)));
+        return rc;
+    }
+
+    private RC parse(String configFile, String content) {
+        params = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(content))) {
             String line = reader.readLine();
             while (line != null) {
                 if (line.isEmpty() || line.startsWith(grammar.getCommentLinePrefix())) {
@@ -49,8 +93,6 @@ public class ConfigReader {
 
                 line = reader.readLine();
             }
-        } catch (FileNotFoundException e) {
-            return new RC(owner, RC.RCType.CODE_CONFIG_FILE_ERROR, "Could not open " + configFile);
         } catch (IOException e) {
             return new RC(owner, RC.RCType.CODE_FAILED_TO_READ, "Could not read " + configFile);
         }
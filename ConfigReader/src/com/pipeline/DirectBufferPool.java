@@ -0,0 +1,82 @@
+package com.pipeline;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Pool of equally sized direct buffers, the off-heap counterpart of BufferPool.
+// Memory of a direct or mapped buffer is normally freed only when GC finds the buffer unreachable,
+// so it grows with the data while the heap is quiet. Buffers of the pool are reused instead,
+// and buffers which do not fit into the pool are freed at once by free().
+public class DirectBufferPool {
+    private static final int MAX_SHARED_FREE_BYTES = 64 * 1024 * 1024;
+    private static final int MIN_SHARED_FREE_BUFFERS = 4;
+    private static final ConcurrentHashMap<Integer, DirectBufferPool> sharedPools = new ConcurrentHashMap<>();
+    // frees the memory of a direct buffer, null if the JVM does not let us do it
+    private static final Cleaner cleaner = findCleaner();
+
+    private interface Cleaner {
+        void clean(ByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    private final int bufferSize;
+    private final int maxFree;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    private DirectBufferPool(int bufferSize, int maxFree) {
+        this.bufferSize = bufferSize;
+        this.maxFree = maxFree;
+    }
+
+    public static DirectBufferPool shared(int bufferSize) {
+        return sharedPools.computeIfAbsent(bufferSize,
+                size -> new DirectBufferPool(size, Integer.max(MIN_SHARED_FREE_BUFFERS, MAX_SHARED_FREE_BYTES / size)));
+    }
+
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollFirst();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (this) {
+            if (free.size() < maxFree) {
+                free.addFirst(buffer);
+                return;
+            }
+        }
+        free(buffer);
+    }
+
+    // Java 9+ has Unsafe.invokeCleaner(), Java 8 has the cleaner in every direct buffer
+    private static Cleaner findCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {}
+
+        try {
+            Method getCleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> clean.invoke(getCleaner.invoke(buffer));
+        } catch (ReflectiveOperationException | RuntimeException ignored) {}
+        return null;
+    }
+
+    // frees the memory of a direct or mapped buffer right away, the buffer and all its views
+    // must not be used after it; if the JVM does not allow it the memory is left to GC
+    public static void free(ByteBuffer buffer) {
+        if (cleaner == null || buffer == null || !buffer.isDirect())
+            return;
+        try {
+            cleaner.clean(buffer);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {}
+    }
+}
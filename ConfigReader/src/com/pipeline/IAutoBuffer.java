@@ -0,0 +1,23 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.RC;
+
+// Stage which accepts BUFFER_SIZE = AUTO in its config.
+// Such a stage starts with DEFAULT_SIZE, the manager then gives it the size chosen for the whole
+// pipeline by calling setBufferSize() before the stages are connected.
+// The manager also counts the memory of a pipeline by the buffer sizes of its stages
+// and by the memory the stages use besides their buffers.
+public interface IAutoBuffer {
+    String AUTO = "AUTO";
+    int DEFAULT_SIZE = 64 * 1024;
+
+    boolean isBufferSizeAuto();
+    int getBufferSize();
+    RC setBufferSize(int bufferSize);
+
+    // the most memory the stage holds at once besides the buffers passed between the stages:
+    // coding tables, blocks coded in parallel, queues of its own threads. Known after setConfig()
+    default long getMemoryUse() {
+        return 0;
+    }
+}
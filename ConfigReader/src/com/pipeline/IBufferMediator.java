@@ -0,0 +1,13 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IMediator;
+
+import java.nio.ByteBuffer;
+
+// BYTE_ARRAY mediator which can show its block as a read-only ByteBuffer (heap or direct) instead of copying it.
+// The buffer is valid only until the consumer returns from consume(), so the consumer reads it in place
+// and must not keep it; getBuffer() returns null at the end of data like getData() does.
+// Consumers which do not know about it get arrays from getData() as before.
+public interface IBufferMediator extends IMediator {
+    ByteBuffer getBuffer();
+}
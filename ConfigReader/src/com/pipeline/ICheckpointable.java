@@ -0,0 +1,16 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.RC;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+
+// Stage which can save the state it carries between blocks, so a stopped pipeline is resumed
+// from its last checkpoint instead of from the start.
+// The manager calls saveState() between blocks, when every stage is done with the last block,
+// and restoreState() with the saved state after the stages are configured and connected.
+// Stages before this one are saved first, so a stage may pass its pending data on while it is saved.
+public interface ICheckpointable {
+    RC saveState(DataOutput state);
+    RC restoreState(DataInput state);
+}
@@ -0,0 +1,10 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IMediator;
+
+// BYTE_ARRAY mediator which can lend its buffer instead of copying it.
+// A consumer that knows about it calls lease() instead of getData() and releases the slice
+// when it is done with it; lease() returns null at the end of data like getData() does.
+public interface ILeasingMediator extends IMediator {
+    ByteSlice lease();
+}
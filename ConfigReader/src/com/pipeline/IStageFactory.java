@@ -0,0 +1,26 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IExecutor;
+import com.java_polytech.pipeline_interfaces.IReader;
+import com.java_polytech.pipeline_interfaces.IWriter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Creates the stages of a module without reflection, the manager finds the factories with ServiceLoader
+// (they are listed in META-INF/services/com.pipeline.IStageFactory of the module).
+// Stages are mapped by the full names of their classes, the same names as in the manager config.
+public interface IStageFactory {
+    default Map<String, Supplier<IReader>> getReaders() {
+        return Collections.emptyMap();
+    }
+
+    default Map<String, Supplier<IExecutor>> getExecutors() {
+        return Collections.emptyMap();
+    }
+
+    default Map<String, Supplier<IWriter>> getWriters() {
+        return Collections.emptyMap();
+    }
+}
@@ -2,202 +2,727 @@ package com.pipeline;
 
 import com.java_polytech.pipeline_interfaces.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
 
-public class Executor implements IExecutor {
+public class Executor implements IExecutor, IAutoBuffer, ICheckpointable {
     private interface ICoder {
-        RC run(byte[] bytes);
-    }
-
-    private class Encoder implements  ICoder {
-        private byte prevByte = 0;
-        private byte repeatingByte = 0;
-        private byte counter = 0;
-        private int startOfSingles = 0;
-
-        // helper method
-        // set counter, repeatingByte and startOfSingles values when new sequence of
-        // the same or different symbols starts
-        private int startWith(int i, byte[] bytes) {
-            if (i >= bytes.length) {
-                counter = 0;
-                return i;
-            }
+        RC run(byte[] bytes, int length);
 
-            if (i + 1 == bytes.length) {
-                counter = 1;
-                repeatingByte = bytes[i];
-                return i + 1;
-            }
+        // state carried to the next call of run(), for checkpoints
+        default RC saveState(DataOutput state) throws IOException {
+            return RC.RC_SUCCESS;
+        }
 
-            if (bytes[i + 1] == bytes[i]) {
-                counter = 2;
-                repeatingByte = bytes[i + 1];
-            }
-            else {
-                counter = -2;
-                startOfSingles = i;
-            }
+        default void restoreState(DataInput state) throws IOException {
+        }
+
+        // memory held by the coder besides the output buffer
+        default long getMemoryUse() {
+            return 0;
+        }
+    }
+
+    // where coders put their output
+    private interface ISink {
+        RC write(byte val);
+        RC write(byte[] bytes, int from, int count);
+        // writes val count times
+        RC fill(byte val, int count);
+    }
+
+    // writes to the output buffer of the executor and passes it to the consumer when it is full
+    private class BufferSink implements ISink {
+        @Override
+        public RC write(byte val) {
+            return writeToBuffer(val);
+        }
+
+        @Override
+        public RC write(byte[] bytes, int from, int count) {
+            return writeToBuffer(bytes, from, count);
+        }
+
+        @Override
+        public RC fill(byte val, int count) {
+            return fillBuffer(val, count);
+        }
+    }
+
+    // writes to a slice of limited size, used to code separate blocks
+    private static class SliceSink implements ISink {
+        private final ByteSlice slice;
+
+        SliceSink(ByteSlice slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        public RC write(byte val) {
+            if (slice.length == slice.array.length)
+                return RC_BLOCK_OVERFLOW;
+            slice.array[slice.length++] = val;
+            return RC.RC_SUCCESS;
+        }
+
+        @Override
+        public RC write(byte[] bytes, int from, int count) {
+            if (count > slice.array.length - slice.length)
+                return RC_BLOCK_OVERFLOW;
+            System.arraycopy(bytes, from, slice.array, slice.length, count);
+            slice.length += count;
+            return RC.RC_SUCCESS;
+        }
+
+        @Override
+        public RC fill(byte val, int count) {
+            if (count > slice.array.length - slice.length)
+                return RC_BLOCK_OVERFLOW;
+            Arrays.fill(slice.array, slice.length, slice.length + count, val);
+            slice.length += count;
+            return RC.RC_SUCCESS;
+        }
+    }
+
+    // count which starts a stored block instead of a run or single bytes
+    private static final byte STORED_BLOCK = 0;
+
+    // only counts the bytes written to it
+    private static class CountingSink implements ISink {
+        private int count;
+
+        @Override
+        public RC write(byte val) {
+            ++count;
+            return RC.RC_SUCCESS;
+        }
 
-            prevByte = bytes[i + 1];
+        @Override
+        public RC write(byte[] bytes, int from, int count) {
+            this.count += count;
+            return RC.RC_SUCCESS;
+        }
+
+        @Override
+        public RC fill(byte val, int count) {
+            this.count += count;
+            return RC.RC_SUCCESS;
+        }
+    }
+
+    // Every call of run() codes the given bytes as a whole, nothing is carried to the next call.
+    // The stream format gathers the input for it in GatheringEncoder.
+    // The input is split greedily: a pair of equal bytes starts a run of up to 127 equal bytes
+    // written as (count, byte); otherwise up to 128 single bytes are written as (-count, bytes...)
+    // until the next pair of equal bytes. A single byte left at the end is written as a run of 1.
+    // Runs and pairs are searched 8 bytes at a time.
+    // Before a big block is coded, RLE is tried on samples of it, and if it does not make them shorter
+    // the block is written as stored: (0, big-endian int length, bytes...).
+    private static class Encoder implements  ICoder {
+        private static final int MAX_RUN = Byte.MAX_VALUE;
+        private static final int MAX_SINGLES = -Byte.MIN_VALUE;
+        private static final long ONES = 0x0101010101010101L;
+        private static final long HIGHS = 0x8080808080808080L;
+        private static final int MIN_SAMPLED_LENGTH = 16 * 1024;
+        private static final int SAMPLES = 16;
+        private static final int SAMPLE_SIZE = 256;
+
+        private final ISink sink;
+        private final CountingSink counter = new CountingSink();
+
+        Encoder(ISink sink) {
+            this.sink = sink;
+        }
 
-            return i + 2;
+        private boolean isCompressible(byte[] bytes, ByteBuffer words, int length) {
+            counter.count = 0;
+            int step = length / SAMPLES;
+            for (int from = 0; from + SAMPLE_SIZE <= length; from += step)
+                encode(counter, bytes, words, from, from + SAMPLE_SIZE);
+            return counter.count < SAMPLES * SAMPLE_SIZE;
         }
 
-        public RC run(byte[] bytes) {
+        private RC store(byte[] bytes, int length) {
+            RC rc = sink.write(STORED_BLOCK);
+            for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0 && rc.isSuccess(); shift -= Byte.SIZE)
+                rc = sink.write((byte) (length >>> shift));
+            if (rc.isSuccess())
+                rc = sink.write(bytes, 0, length);
+            return rc;
+        }
+
+        // end of the run of bytes equal to bytes[from - 1], but not further than limit
+        private static int findRunEnd(byte[] bytes, ByteBuffer words, int from, int limit) {
+            long pattern = (bytes[from - 1] & 0xFF) * ONES;
+            int i = from;
+            for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+                long diff = words.getLong(i) ^ pattern;
+                if (diff != 0)
+                    return i + Long.numberOfTrailingZeros(diff) / Byte.SIZE;
+            }
+            byte val = bytes[from - 1];
+            while (i < limit && bytes[i] == val)
+                ++i;
+            return i;
+        }
+
+        // first i such that bytes[i - 1] == bytes[i], or limit if there is no such pair before it
+        private static int findPair(byte[] bytes, ByteBuffer words, int from, int limit) {
+            int i = from;
+            for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+                // zero byte of diff means a pair, only the lowest zero byte is detected exactly
+                long diff = words.getLong(i - 1) ^ words.getLong(i);
+                long zeros = (diff - ONES) & ~diff & HIGHS;
+                if (zeros != 0)
+                    return i + Long.numberOfTrailingZeros(zeros) / Byte.SIZE;
+            }
+            while (i < limit && bytes[i] != bytes[i - 1])
+                ++i;
+            return i;
+        }
+
+        public RC run(byte[] bytes, int length) {
             if (bytes == null)
                 return RC.RC_SUCCESS;
-            int i = startWith(0, bytes);
-            for (; i < bytes.length; ++i) {
-                if (counter == Byte.MAX_VALUE) {
-                    RC rc = writeToBuffer(counter);
-                    if (!rc.isSuccess())
-                        return rc;
-                    rc = writeToBuffer(repeatingByte);
-                    if (!rc.isSuccess())
-                        return rc;
-                    i = startWith(i, bytes);
-                }
-                if (counter == Byte.MIN_VALUE) {
-                    RC rc = writeToBuffer(counter);
-                    if (!rc.isSuccess())
-                        return rc;
-                    rc = writeToBuffer(bytes, startOfSingles, -counter);
-                    if (!rc.isSuccess())
-                        return rc;
-                    i = startWith(i, bytes);
-                }
+            // little-endian, so the lowest byte of a word is the first one
+            ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (length >= MIN_SAMPLED_LENGTH && !isCompressible(bytes, words, length))
+                return store(bytes, length);
+            return encode(sink, bytes, words, 0, length);
+        }
 
-                if (i >= bytes.length)
-                    break;
-
-                if (bytes[i] == prevByte) {
-                    if (counter > 0)
-                        ++counter;
-                    else {
-                        RC rc = writeToBuffer((byte) (counter + 1));
-                        if (!rc.isSuccess())
-                            return rc;
-                        rc = writeToBuffer(bytes, startOfSingles, -counter - 1);
-                        if (!rc.isSuccess())
-                            return rc;
-                        counter = 2;
-                        repeatingByte = bytes[i];
-                    }
+        private static RC encode(ISink sink, byte[] bytes, ByteBuffer words, int from, int length) {
+            int i = from;
+            while (i < length) {
+                RC rc;
+                if (i + 1 == length || bytes[i] == bytes[i + 1]) {
+                    int end = i + 1 == length ? length :
+                            findRunEnd(bytes, words, i + 2, Integer.min(length, i + MAX_RUN));
+                    rc = sink.write((byte) (end - i));
+                    if (rc.isSuccess())
+                        rc = sink.write(bytes[i]);
+                    i = end;
                 }
                 else {
-                    if (counter > 0) {
-                        RC rc = writeToBuffer(counter);
-                        if (!rc.isSuccess())
-                            return rc;
-                        rc = writeToBuffer(repeatingByte);
-                        if (!rc.isSuccess())
-                            return rc;
-                        i = startWith(i, bytes) - 1;
-                    }
-                    else {
-                        --counter;
-                    }
+                    int limit = Integer.min(length, i + MAX_SINGLES);
+                    int pair = findPair(bytes, words, i + 2, limit);
+                    // the first byte of the pair starts the next run
+                    int end = pair < limit ? pair - 1 : limit;
+                    rc = sink.write((byte) (i - end));
+                    if (rc.isSuccess())
+                        rc = sink.write(bytes, i, end - i);
+                    i = end;
                 }
-                prevByte = bytes[i];
-            }
-
-            if (counter > 0) {
-                RC rc = writeToBuffer(counter);
-                if (!rc.isSuccess())
-                    return rc;
-                rc = writeToBuffer(repeatingByte);
                 if (!rc.isSuccess())
                     return rc;
             }
-            else if (counter < 0) {
-                RC rc = writeToBuffer(counter);
-                if (!rc.isSuccess())
-                    return rc;
-                rc = writeToBuffer(bytes, startOfSingles, -counter);
-                if (!rc.isSuccess())
-                    return rc;
+
+            return RC.RC_SUCCESS;
+        }
+    }
+
+    // Encoder of the stream format. Blocks of the provider are usually much smaller than MIN_SAMPLED_LENGTH,
+    // so they are gathered until there is enough to choose between RLE and a stored block.
+    // Blocks which are big enough by themselves are coded as they come.
+    private static class GatheringEncoder implements ICoder {
+        private final Encoder encoder;
+        private final byte[] gathered = new byte[Encoder.MIN_SAMPLED_LENGTH];
+        private int gatheredLength = 0;
+
+        GatheringEncoder(ISink sink) {
+            encoder = new Encoder(sink);
+        }
+
+        @Override
+        public RC run(byte[] bytes, int length) {
+            if (bytes == null) {
+                int rest = gatheredLength;
+                gatheredLength = 0;
+                return rest > 0 ? encoder.run(gathered, rest) : RC.RC_SUCCESS;
+            }
+            if (gatheredLength == 0 && length >= gathered.length)
+                return encoder.run(bytes, length);
+
+            int i = 0;
+            while (i < length) {
+                int count = Integer.min(length - i, gathered.length - gatheredLength);
+                System.arraycopy(bytes, i, gathered, gatheredLength, count);
+                gatheredLength += count;
+                i += count;
+                if (gatheredLength == gathered.length) {
+                    gatheredLength = 0;
+                    RC rc = encoder.run(gathered, gathered.length);
+                    if (!rc.isSuccess())
+                        return rc;
+                }
             }
+            return RC.RC_SUCCESS;
+        }
 
+        @Override
+        public RC saveState(DataOutput state) throws IOException {
+            state.writeInt(gatheredLength);
+            state.write(gathered, 0, gatheredLength);
             return RC.RC_SUCCESS;
         }
+
+        @Override
+        public void restoreState(DataInput state) throws IOException {
+            gatheredLength = readInt(state, 0, gathered.length - 1);
+            state.readFully(gathered, 0, gatheredLength);
+        }
+
+        @Override
+        public long getMemoryUse() {
+            return gathered.length;
+        }
     }
 
-    private class Decoder implements ICoder {
+    private static class Decoder implements ICoder {
+        private final ISink sink;
         // if the sequence of different symbols to decode is taller than current input buffer
         private int restToDecode = 0;
         // if there is a count of the end of input buffer and encoded symbol if next buffer
         private int prevCount = 0;
+        // bytes of the length of a stored block which are in the next buffer
+        private int storedHeaderRest = 0;
+        private int storedLength;
 
-        @Override
-        public RC run(byte[] bytes) {
-            /* if algorithm was written correctly then we must
-           write the rest of different symbols from previous buffer
-           or the first symbol prevCount times, but not at the same time */
-            assert(prevCount >= 0 && restToDecode == 0 ||
-                    prevCount == 0 && restToDecode >= 0);
+        Decoder(ISink sink) {
+            this.sink = sink;
+        }
 
+        @Override
+        public RC run(byte[] bytes, int length) {
             if (bytes == null) {
-                if (restToDecode != 0 || prevCount != 0)
+                if (restToDecode != 0 || prevCount != 0 || storedHeaderRest != 0)
                     return new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR, "Invalid RLE code");
                 return RC.RC_SUCCESS;
             }
             int i = 0;
             if (prevCount > 0) {
-                for (int j = 0; j < prevCount; ++j) {
-                    RC rc = writeToBuffer(bytes[0]);
-                    if (!rc.isSuccess())
-                        return rc;
-                }
-                ++i;
-                prevCount = 0;
-            }
-            else if (restToDecode > 0) {
-                int restInThisBuffer = Integer.min(bytes.length, restToDecode);
-                RC rc = writeToBuffer(bytes, 0, restInThisBuffer);
+                RC rc = sink.fill(bytes[0], prevCount);
                 if (!rc.isSuccess())
                     return rc;
-                i += restInThisBuffer;
-                restToDecode -= restInThisBuffer;
+                ++i;
+                prevCount = 0;
             }
 
-            while (i < bytes.length)  {
+            while (i < length)  {
+                if (storedHeaderRest > 0) {
+                    storedLength = storedLength << Byte.SIZE | (bytes[i++] & 0xFF);
+                    if (--storedHeaderRest == 0) {
+                        if (storedLength < 0)
+                            return new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR, "Invalid RLE code");
+                        restToDecode = storedLength;
+                    }
+                    continue;
+                }
+                // single bytes and stored blocks are copied as they are
+                if (restToDecode > 0) {
+                    int count = Integer.min(length - i, restToDecode);
+                    RC rc = sink.write(bytes, i, count);
+                    if (!rc.isSuccess())
+                        return rc;
+                    i += count;
+                    restToDecode -= count;
+                    continue;
+                }
+
                 int count = bytes[i];
-                if (i + 1 == bytes.length) {
-                    restToDecode = count > 0 ? 0 : -count;
-                    prevCount =  Integer.max(count, 0);
-                    return RC.RC_SUCCESS;
+                if (count == STORED_BLOCK) {
+                    storedHeaderRest = Integer.BYTES;
+                    storedLength = 0;
+                    ++i;
                 }
-                if (count > 0) {
-                    byte sym =  bytes[i + 1];
-                    for (int j = 0; j < count; ++j) {
-                        RC rc = writeToBuffer(sym);
-                        if (!rc.isSuccess())
-                            return rc;
+                else if (count > 0) {
+                    if (i + 1 == length) {
+                        prevCount = count;
+                        return RC.RC_SUCCESS;
                     }
+                    RC rc = sink.fill(bytes[i + 1], count);
+                    if (!rc.isSuccess())
+                        return rc;
                     i += 2;
                 }
                 else {
-                    count = -count;
+                    restToDecode = -count;
                     ++i;
-                    if (count > bytes.length - i) {
-                        restToDecode = count - (bytes.length - i);
-                        count = bytes.length - i;
-                    }
-                    RC rc = writeToBuffer(bytes, i, count);
+                }
+            }
+
+            return RC.RC_SUCCESS;
+        }
+
+        @Override
+        public RC saveState(DataOutput state) throws IOException {
+            state.writeInt(restToDecode);
+            state.writeInt(prevCount);
+            state.writeInt(storedHeaderRest);
+            state.writeInt(storedLength);
+            return RC.RC_SUCCESS;
+        }
+
+        @Override
+        public void restoreState(DataInput state) throws IOException {
+            restToDecode = readInt(state, 0, Integer.MAX_VALUE);
+            prevCount = readInt(state, 0, Byte.MAX_VALUE);
+            storedHeaderRest = readInt(state, 0, Integer.BYTES);
+            storedLength = state.readInt();
+        }
+    }
+
+    // Framed format: input is split into blocks of BLOCK_SIZE bytes which are coded independently
+    // on the ForkJoin pool. Every frame starts with a header of two big-endian ints:
+    // length of the raw block and length of the encoded block which follows the header.
+    // With CHECKSUM = on the highest bit of the encoded length is set and the header has one more int,
+    // CRC32 of the raw block, which the decoder checks while the frames are decoded.
+    // With INDEX = on the encoder writes a BlockIndex after the last frame, a frame with raw length 0
+    // which the decoder skips.
+    private static final int FRAME_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int CHECKSUM_SIZE = Integer.BYTES;
+    private static final int CHECKSUM_FLAG = 1 << 31;
+    // blocks which are coded at the same time, each of them holds a raw and an encoded block
+    private static final int MAX_FRAMES_IN_FLIGHT = 2 * ForkJoinPool.getCommonPoolParallelism();
+    private static final RC RC_BLOCK_OVERFLOW =
+            new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR, "RLE block is larger than expected");
+    private static final RC RC_INVALID_FRAME =
+            new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR, "Invalid RLE frame");
+    private static final RC RC_INVALID_STATE =
+            new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR, "Invalid RLE checkpoint state");
+
+    // encoded block can not be longer, the worst case is a single symbol followed by a pair
+    private static int maxEncodedSize(int rawSize) {
+        return rawSize + rawSize / 2 + 2;
+    }
+
+    private static void putInt(byte[] bytes, int at, int val) {
+        bytes[at] = (byte) (val >>> 24);
+        bytes[at + 1] = (byte) (val >>> 16);
+        bytes[at + 2] = (byte) (val >>> 8);
+        bytes[at + 3] = (byte) val;
+    }
+
+    private static int getInt(byte[] bytes, int at) {
+        return (bytes[at] & 0xFF) << 24 | (bytes[at + 1] & 0xFF) << 16 |
+                (bytes[at + 2] & 0xFF) << 8 | (bytes[at + 3] & 0xFF);
+    }
+
+    // int of the saved state which must be in [min, max]
+    private static int readInt(DataInput state, int min, int max) throws IOException {
+        int val = state.readInt();
+        if (val < min || val > max)
+            throw new IOException("Value out of range");
+        return val;
+    }
+
+    private static int checksum(ByteSlice block) {
+        CRC32 crc = new CRC32();
+        crc.update(block.array, 0, block.length);
+        return (int) crc.getValue();
+    }
+
+    // result of coding of one block
+    private static class Frame {
+        final ByteSlice data;
+        final RC rc;
+
+        Frame(ByteSlice data, RC rc) {
+            this.data = data;
+            this.rc = rc;
+        }
+    }
+
+    // common part of the framed coders: blocks are coded in parallel but written in order,
+    // no more than maxInFlight blocks are coded at the same time
+    private abstract class FramedCoder implements ICoder {
+        private final ArrayDeque<ForkJoinTask<Frame>> inFlight = new ArrayDeque<>();
+        // bytes of the frames written to the output
+        long writtenBytes = 0;
+
+        void submit(Callable<Frame> task) {
+            inFlight.addLast(ForkJoinPool.commonPool().submit(task));
+        }
+
+        // writes coded blocks to the output until no more than limit blocks are left,
+        // in the verify mode they are only checked
+        RC drain(int limit) {
+            while (inFlight.size() > limit) {
+                Frame frame;
+                try {
+                    frame = inFlight.pollFirst().join();
+                } catch (RuntimeException e) {
+                    return new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR, "Failed to code block: " + e);
+                }
+                if (!frame.rc.isSuccess())
+                    return frame.rc;
+                if (index != null)
+                    index.addFrame(writtenBytes);
+                writtenBytes += frame.data.length;
+                RC rc = isVerifyOnly ? RC.RC_SUCCESS : writeToBuffer(frame.data.array, 0, frame.data.length);
+                frame.data.release();
+                if (!rc.isSuccess())
+                    return rc;
+            }
+            return RC.RC_SUCCESS;
+        }
+
+        RC afterSubmit() {
+            return drain(MAX_FRAMES_IN_FLIGHT);
+        }
+
+        // one block more is submitted before the first one is written, and one is being filled
+        @Override
+        public long getMemoryUse() {
+            long frameSize = FRAME_HEADER_SIZE + CHECKSUM_SIZE + maxEncodedSize(blockSize);
+            return (MAX_FRAMES_IN_FLIGHT + 1) * (blockSize + frameSize) + frameSize;
+        }
+    }
+
+    private class FramedEncoder extends FramedCoder {
+        private final BufferPool rawPool = BufferPool.shared(blockSize);
+        private final BufferPool framePool =
+                BufferPool.shared(FRAME_HEADER_SIZE + CHECKSUM_SIZE + maxEncodedSize(blockSize));
+        private ByteSlice block;
+        private long rawSize = 0;
+
+        @Override
+        public RC run(byte[] bytes, int length) {
+            if (bytes == null) {
+                if (block != null) {
+                    ByteSlice last = block;
+                    submit(() -> code(last));
+                }
+                block = null;
+                RC rc = drain(0);
+                if (!rc.isSuccess() || index == null)
+                    return rc;
+                byte[] trailer = index.toTrailer(writtenBytes, rawSize);
+                return writeToBuffer(trailer, 0, trailer.length);
+            }
+
+            int i = 0;
+            while (i < length) {
+                if (block == null)
+                    block = rawPool.acquire();
+                int count = Integer.min(length - i, blockSize - block.length);
+                System.arraycopy(bytes, i, block.array, block.length, count);
+                block.length += count;
+                rawSize += count;
+                i += count;
+                if (block.length == blockSize) {
+                    ByteSlice full = block;
+                    submit(() -> code(full));
+                    block = null;
+                    RC rc = afterSubmit();
                     if (!rc.isSuccess())
                         return rc;
+                }
+            }
+            return RC.RC_SUCCESS;
+        }
+
+        private Frame code(ByteSlice block) {
+            int headerSize = isChecksumOn ? FRAME_HEADER_SIZE + CHECKSUM_SIZE : FRAME_HEADER_SIZE;
+            ByteSlice frame = framePool.acquire();
+            frame.length = headerSize;
+            RC rc = new Encoder(new SliceSink(frame)).run(block.array, block.length);
+            int encodedLength = frame.length - headerSize;
+            putInt(frame.array, 0, block.length);
+            putInt(frame.array, Integer.BYTES, isChecksumOn ? encodedLength | CHECKSUM_FLAG : encodedLength);
+            if (isChecksumOn)
+                putInt(frame.array, FRAME_HEADER_SIZE, checksum(block));
+            block.release();
+            return new Frame(frame, rc);
+        }
+
+        // coded blocks are written out, only the block being filled is saved
+        @Override
+        public RC saveState(DataOutput state) throws IOException {
+            RC rc = drain(0);
+            if (!rc.isSuccess())
+                return rc;
+            int length = block != null ? block.length : 0;
+            state.writeInt(length);
+            state.write(block != null ? block.array : new byte[0], 0, length);
+            state.writeLong(writtenBytes);
+            state.writeLong(rawSize);
+            if (index != null)
+                index.save(state);
+            return RC.RC_SUCCESS;
+        }
+
+        @Override
+        public void restoreState(DataInput state) throws IOException {
+            int length = readInt(state, 0, blockSize - 1);
+            if (length > 0) {
+                block = rawPool.acquire();
+                state.readFully(block.array, 0, length);
+                block.length = length;
+            }
+            writtenBytes = state.readLong();
+            rawSize = state.readLong();
+            if (index != null)
+                index.restore(state);
+        }
+    }
+
+    private class FramedDecoder extends FramedCoder {
+        private final BufferPool encodedPool = BufferPool.shared(maxEncodedSize(blockSize));
+        private final BufferPool rawPool = BufferPool.shared(blockSize);
+        private final byte[] header = new byte[FRAME_HEADER_SIZE + CHECKSUM_SIZE];
+        private int headerSize = FRAME_HEADER_SIZE;
+        private int headerLength = 0;
+        private int rawLength;
+        private int encodedLength;
+        private boolean hasChecksum;
+        private long framesCount = 0;
+        private ByteSlice block;
+        // bytes of the index which are still to skip
+        private int indexRest = 0;
+
+        @Override
+        public RC run(byte[] bytes, int length) {
+            if (bytes == null) {
+                if (headerLength != 0 || indexRest != 0)
+                    return RC_INVALID_FRAME;
+                return drain(0);
+            }
+
+            int i = 0;
+            while (i < length) {
+                if (indexRest > 0) {
+                    int count = Integer.min(length - i, indexRest);
                     i += count;
+                    indexRest -= count;
+                    continue;
+                }
+                if (headerLength < headerSize) {
+                    int count = Integer.min(length - i, headerSize - headerLength);
+                    System.arraycopy(bytes, i, header, headerLength, count);
+                    headerLength += count;
+                    i += count;
+                    if (headerLength < headerSize)
+                        break;
+                    if (headerSize == FRAME_HEADER_SIZE) {
+                        rawLength = getInt(header, 0);
+                        encodedLength = getInt(header, Integer.BYTES);
+                        // the index is not needed to decode the whole stream
+                        if (rawLength == 0) {
+                            if (encodedLength < 0)
+                                return RC_INVALID_FRAME;
+                            indexRest = encodedLength;
+                            headerLength = 0;
+                            continue;
+                        }
+                        hasChecksum = (encodedLength & CHECKSUM_FLAG) != 0;
+                        encodedLength &= ~CHECKSUM_FLAG;
+                        if (rawLength <= 0 || rawLength > blockSize ||
+                                encodedLength <= 0 || encodedLength > maxEncodedSize(blockSize))
+                            return RC_INVALID_FRAME;
+                        // the checksum follows
+                        if (hasChecksum) {
+                            headerSize += CHECKSUM_SIZE;
+                            continue;
+                        }
+                    }
+                    block = encodedPool.acquire();
+                }
+
+                int count = Integer.min(length - i, encodedLength - block.length);
+                System.arraycopy(bytes, i, block.array, block.length, count);
+                block.length += count;
+                i += count;
+                if (block.length == encodedLength) {
+                    ByteSlice full = block;
+                    int expectedLength = rawLength;
+                    boolean isChecked = hasChecksum;
+                    int expectedChecksum = getInt(header, FRAME_HEADER_SIZE);
+                    long index = framesCount++;
+                    submit(() -> code(full, expectedLength, isChecked, expectedChecksum, index));
+                    block = null;
+                    headerLength = 0;
+                    headerSize = FRAME_HEADER_SIZE;
+                    RC rc = afterSubmit();
+                    if (!rc.isSuccess())
+                        return rc;
                 }
             }
+            return RC.RC_SUCCESS;
+        }
 
+        private Frame code(ByteSlice block, int rawLength, boolean isChecked, int expectedChecksum, long index) {
+            ByteSlice raw = rawPool.acquire();
+            Decoder decoder = new Decoder(new SliceSink(raw));
+            RC rc = decoder.run(block.array, block.length);
+            block.release();
+            if (rc.isSuccess())
+                rc = decoder.run(null, 0);
+            if (rc.isSuccess() && raw.length != rawLength)
+                rc = RC_INVALID_FRAME;
+            if (rc.isSuccess() && isChecked && checksum(raw) != expectedChecksum)
+                rc = new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR,
+                        "Checksum of RLE frame " + index + " does not match, the data is corrupted");
+            return new Frame(raw, rc);
+        }
+
+        // decoded blocks are written out, the header and the block being read are saved
+        @Override
+        public RC saveState(DataOutput state) throws IOException {
+            RC rc = drain(0);
+            if (!rc.isSuccess())
+                return rc;
+            state.writeInt(headerSize);
+            state.writeInt(headerLength);
+            state.write(header, 0, headerLength);
+            state.writeInt(rawLength);
+            state.writeInt(encodedLength);
+            state.writeBoolean(hasChecksum);
+            state.writeLong(framesCount);
+            state.writeInt(indexRest);
+            int length = block != null ? block.length : -1;
+            state.writeInt(length);
+            if (block != null)
+                state.write(block.array, 0, length);
             return RC.RC_SUCCESS;
         }
+
+        @Override
+        public void restoreState(DataInput state) throws IOException {
+            headerSize = readInt(state, FRAME_HEADER_SIZE, FRAME_HEADER_SIZE + CHECKSUM_SIZE);
+            headerLength = readInt(state, 0, headerSize);
+            state.readFully(header, 0, headerLength);
+            rawLength = readInt(state, 0, blockSize);
+            encodedLength = readInt(state, 0, maxEncodedSize(blockSize));
+            hasChecksum = state.readBoolean();
+            framesCount = state.readLong();
+            indexRest = readInt(state, 0, Integer.MAX_VALUE);
+            int length = readInt(state, -1, encodedLength - 1);
+            // the block is taken as soon as the whole header is read
+            if ((length >= 0) != (headerLength == headerSize))
+                throw new IOException("Block does not match the header");
+            if (length >= 0) {
+                block = encodedPool.acquire();
+                state.readFully(block.array, 0, length);
+                block.length = length;
+            }
+        }
     }
 
     private enum Mode {
         ENCODE ("ENCODE"),
-        DECODE ("DECODE");
+        DECODE ("DECODE"),
+        // decodes and checks the data, but passes nothing further
+        VERIFY ("VERIFY");
         private final String str;
 
         Mode(String str) {
@@ -209,11 +734,24 @@ public class Executor implements IExecutor {
     }
 
     private IConsumer writer;
+    private BufferPool pool;
+    private ByteSlice slice;
     private byte[] buffer;
     private int bufferSize;
+    private boolean isBufferSizeAuto = false;
     private int bufferIndex = 0;
+    // size of independent blocks in the framed format, 0 for the plain stream format
+    private int blockSize = 0;
+    private boolean isChecksumOn = false;
+    private boolean isVerifyOnly = false;
+    // frames written by the framed encoder with INDEX = on, null otherwise
+    private BlockIndex index;
     private ICoder coder;
     private IMediator mediator;
+    private ILeasingMediator leasingMediator;
+    private IBufferMediator bufferMediator;
+    // the coders work with arrays, so blocks given as buffers are copied here
+    private byte[] inputArray = new byte[0];
     final private TYPE[] supportedTypes = { TYPE.BYTE_ARRAY };
 
     @Override
@@ -228,32 +766,101 @@ public class Executor implements IExecutor {
         }
 
         String sizeStr = configReader.getParam(ExecutorConfigGrammar.ConfigParams.BUFFER_SIZE.toStr());
-        try {
-            bufferSize = Integer.parseInt(sizeStr);
-        }
-        catch (NumberFormatException e) {
-            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        isBufferSizeAuto = sizeStr.equalsIgnoreCase(AUTO);
+        int size = DEFAULT_SIZE;
+        if (!isBufferSizeAuto) {
+            try {
+                size = Integer.parseInt(sizeStr);
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+            }
         }
 
-        if (bufferSize <= 0)
-            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
-
-        buffer = new byte[bufferSize];
+        rc = setBufferSize(size);
+        if (!rc.isSuccess())
+            return rc;
 
         if (!configReader.hasKey(ExecutorConfigGrammar.ConfigParams.MODE.toStr())) {
             return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
         }
+        if (configReader.hasKey(ExecutorConfigGrammar.ConfigParams.BLOCK_SIZE.toStr())) {
+            try {
+                blockSize = Integer.parseInt(configReader.getParam(ExecutorConfigGrammar.ConfigParams.BLOCK_SIZE.toStr()));
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+            }
+            if (blockSize <= 0 || blockSize > Integer.MAX_VALUE / 2 - FRAME_HEADER_SIZE)
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        }
+        if (configReader.hasKey(ExecutorConfigGrammar.ConfigParams.CHECKSUM.toStr())) {
+            String checksumStr = configReader.getParam(ExecutorConfigGrammar.ConfigParams.CHECKSUM.toStr());
+            if (checksumStr.equalsIgnoreCase("ON"))
+                isChecksumOn = true;
+            else if (!checksumStr.equalsIgnoreCase("OFF"))
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+            if (isChecksumOn && blockSize == 0)
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        }
+
+        boolean isIndexOn = false;
+        if (configReader.hasKey(ExecutorConfigGrammar.ConfigParams.INDEX.toStr())) {
+            String indexStr = configReader.getParam(ExecutorConfigGrammar.ConfigParams.INDEX.toStr());
+            if (indexStr.equalsIgnoreCase("ON"))
+                isIndexOn = true;
+            else if (!indexStr.equalsIgnoreCase("OFF"))
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+            if (isIndexOn && blockSize == 0)
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        }
+
         String modeStr = configReader.getParam(ExecutorConfigGrammar.ConfigParams.MODE.toStr());
+        if (isIndexOn && !modeStr.equalsIgnoreCase(Mode.ENCODE.toStr()))
+            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        if (isIndexOn)
+            index = new BlockIndex(blockSize);
         if (modeStr.equalsIgnoreCase(Mode.ENCODE.toStr()))
-            coder = new Encoder();
+            coder = blockSize > 0 ? new FramedEncoder() : new GatheringEncoder(new BufferSink());
         else if (modeStr.equalsIgnoreCase(Mode.DECODE.toStr()))
-            coder = new Decoder();
+            coder = blockSize > 0 ? new FramedDecoder() : new Decoder(new BufferSink());
+        else if (modeStr.equalsIgnoreCase(Mode.VERIFY.toStr())) {
+            isVerifyOnly = true;
+            coder = blockSize > 0 ? new FramedDecoder() : new Decoder(new CountingSink());
+        }
         else
             return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
 
        return RC.RC_SUCCESS;
     }
 
+    @Override
+    public boolean isBufferSizeAuto() {
+        return isBufferSizeAuto;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public long getMemoryUse() {
+        return coder != null ? coder.getMemoryUse() : 0;
+    }
+
+    @Override
+    public RC setBufferSize(int size) {
+        if (size <= 0)
+            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+
+        bufferSize = size;
+        pool = BufferPool.shared(bufferSize);
+        slice = pool.acquire();
+        buffer = slice.array;
+        return RC.RC_SUCCESS;
+    }
+
     private RC writeToBuffer(byte val) {
         buffer[bufferIndex] = val;
         bufferIndex++;
@@ -266,10 +873,62 @@ public class Executor implements IExecutor {
     }
 
     private RC writeToBuffer(byte[] bytes, int from, int count) {
-        for (int i = from, cnt = 0; cnt < count; ++cnt, ++i) {
-            RC rc = writeToBuffer(bytes[i]);
+        while (count > 0) {
+            int part = Integer.min(count, bufferSize - bufferIndex);
+            System.arraycopy(bytes, from, buffer, bufferIndex, part);
+            bufferIndex += part;
+            from += part;
+            count -= part;
+            if (bufferIndex == bufferSize) {
+                // buffer may be replaced by the consumer if it leases the slice
+                RC rc = writer.consume();
+                bufferIndex = 0;
+                if (!rc.isSuccess())
+                    return rc;
+            }
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC fillBuffer(byte val, int count) {
+        while (count > 0) {
+            int part = Integer.min(count, bufferSize - bufferIndex);
+            Arrays.fill(buffer, bufferIndex, bufferIndex + part, val);
+            bufferIndex += part;
+            count -= part;
+            if (bufferIndex == bufferSize) {
+                RC rc = writer.consume();
+                bufferIndex = 0;
+                if (!rc.isSuccess())
+                    return rc;
+            }
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC saveState(DataOutput state) {
+        try {
+            // framed coders pass their coded blocks to the buffer first
+            RC rc = coder.saveState(state);
             if (!rc.isSuccess())
                 return rc;
+            state.writeInt(bufferIndex);
+            state.write(buffer, 0, bufferIndex);
+        } catch (IOException e) {
+            return RC_INVALID_STATE;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC restoreState(DataInput state) {
+        try {
+            coder.restoreState(state);
+            bufferIndex = readInt(state, 0, bufferSize - 1);
+            state.readFully(buffer, 0, bufferIndex);
+        } catch (IOException e) {
+            return RC_INVALID_STATE;
         }
         return RC.RC_SUCCESS;
     }
@@ -291,13 +950,39 @@ public class Executor implements IExecutor {
             return RC.RC_EXECUTOR_TYPES_INTERSECTION_EMPTY_ERROR;
 
         mediator = iProvider.getMediator(intersectType);
+        if (mediator instanceof ILeasingMediator)
+            leasingMediator = (ILeasingMediator) mediator;
+        else if (mediator instanceof IBufferMediator)
+            bufferMediator = (IBufferMediator) mediator;
         return RC.RC_SUCCESS;
     }
 
     @Override
     public RC consume() {
-        byte[] data = (byte[]) mediator.getData();
-        RC rc = coder.run(data);
+        ByteSlice inSlice = null;
+        byte[] data;
+        int length;
+        if (leasingMediator != null) {
+            inSlice = leasingMediator.lease();
+            data = inSlice != null ? inSlice.array : null;
+            length = inSlice != null ? inSlice.length : 0;
+        }
+        else if (bufferMediator != null) {
+            ByteBuffer block = bufferMediator.getBuffer();
+            length = block != null ? block.remaining() : 0;
+            if (length > inputArray.length)
+                inputArray = new byte[length];
+            if (block != null)
+                block.get(inputArray, 0, length);
+            data = block != null ? inputArray : null;
+        }
+        else {
+            data = (byte[]) mediator.getData();
+            length = data != null ? data.length : 0;
+        }
+        RC rc = coder.run(data, length);
+        if (inSlice != null)
+            inSlice.release();
         if (!rc.isSuccess())
             return rc;
         if (data == null) {
@@ -327,11 +1012,28 @@ public class Executor implements IExecutor {
     @Override
     public IMediator getMediator(TYPE type) {
         if (type == TYPE.BYTE_ARRAY) {
-            class ByteArrayMediator implements IMediator {
+            class ByteArrayMediator implements ILeasingMediator, IBufferMediator {
                 @Override
                 public Object getData() {
                     return bufferIndex > 0 ? Arrays.copyOf(buffer, bufferIndex) : null;
                 }
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    return bufferIndex > 0 ? ByteBuffer.wrap(buffer, 0, bufferIndex).asReadOnlyBuffer() : null;
+                }
+
+                // the filled slice goes to the consumer and the coder continues in a new one
+                @Override
+                public ByteSlice lease() {
+                    if (bufferIndex <= 0)
+                        return null;
+                    ByteSlice leased = slice;
+                    leased.length = bufferIndex;
+                    slice = pool.acquire();
+                    buffer = slice.array;
+                    return leased;
+                }
             }
             return new ByteArrayMediator();
         }
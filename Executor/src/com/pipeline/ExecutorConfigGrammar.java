@@ -3,7 +3,16 @@ package com.pipeline;
 public class ExecutorConfigGrammar implements IConfigGrammar {
     enum ConfigParams {
         BUFFER_SIZE ("BUFFER_SIZE"),
-        MODE ("MODE");
+        MODE ("MODE"),
+        // if set, data is coded by independent blocks of this size in parallel
+        BLOCK_SIZE ("BLOCK_SIZE"),
+        // used with BLOCK_SIZE only: on or off, encoder stores CRC32 of every block to be checked by decoder
+        CHECKSUM ("CHECKSUM"),
+        // used with BLOCK_SIZE in the encode mode only: on or off, encoder writes an index of the blocks
+        // after the last one, so a range of the data can be decoded without the blocks before it
+        INDEX ("INDEX"),
+        // used by LZExecutor only: fast or high
+        LEVEL ("LEVEL");
 
         private final String str;
         ConfigParams(String str) {
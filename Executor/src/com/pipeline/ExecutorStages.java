@@ -0,0 +1,17 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IExecutor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class ExecutorStages implements IStageFactory {
+    @Override
+    public Map<String, Supplier<IExecutor>> getExecutors() {
+        Map<String, Supplier<IExecutor>> executors = new HashMap<>();
+        executors.put(Executor.class.getName(), Executor::new);
+        executors.put(LZExecutor.class.getName(), LZExecutor::new);
+        return executors;
+    }
+}
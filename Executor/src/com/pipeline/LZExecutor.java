@@ -0,0 +1,646 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// LZ77 executor with the sequence format of LZ4.
+// Data is coded by blocks of up to BLOCK_SIZE bytes, every block starts with a header of two big-endian ints:
+// length of the raw block and length of the coded block, the highest bit of which is set if the block
+// is stored as it is (when coding does not make it shorter). A coded block is a list of sequences:
+// token (high 4 bits - number of literals, low 4 bits - match length minus MIN_MATCH, 15 means that
+// the rest of the number follows as bytes of 255 ended by a smaller byte), literals, little-endian 2-byte
+// offset of the match and the rest of the match length. The last sequence of a block may have no match.
+// Matches may refer to previous blocks, but not further than MAX_OFFSET bytes back.
+// LEVEL = fast looks up one candidate in a hash table, LEVEL = high searches hash chains with lazy matching.
+public class LZExecutor implements IExecutor, IAutoBuffer {
+    private interface ICoder {
+        RC run(byte[] bytes, int length);
+
+        // memory of the window and the tables of the coder
+        long getMemoryUse();
+    }
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int WINDOW_SIZE = 64 * 1024;
+    private static final int MAX_OFFSET = WINDOW_SIZE - 1;
+    private static final int MIN_MATCH = 4;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int STORED_FLAG = 1 << 31;
+    private static final RC RC_INVALID_BLOCK =
+            new RC(RC.RCWho.EXECUTOR, RC.RCType.CODE_CUSTOM_ERROR, "Invalid LZ block");
+
+    // coded block can not be longer
+    private static int maxEncodedSize(int rawSize) {
+        return rawSize + rawSize / 255 + 16;
+    }
+
+    private static void putInt(byte[] bytes, int at, int val) {
+        bytes[at] = (byte) (val >>> 24);
+        bytes[at + 1] = (byte) (val >>> 16);
+        bytes[at + 2] = (byte) (val >>> 8);
+        bytes[at + 3] = (byte) val;
+    }
+
+    private static int getInt(byte[] bytes, int at) {
+        return (bytes[at] & 0xFF) << 24 | (bytes[at + 1] & 0xFF) << 16 |
+                (bytes[at + 2] & 0xFF) << 8 | (bytes[at + 3] & 0xFF);
+    }
+
+    private enum Level {
+        FAST ("FAST"),
+        HIGH ("HIGH");
+        private final String str;
+
+        Level(String str) {
+            this.str = str;
+        }
+        String toStr() {
+            return str;
+        }
+    }
+
+    // Keeps the last WINDOW_SIZE bytes of the input and the block being collected.
+    // Hash tables hold positions in the whole stream, so they stay valid when the history is shifted.
+    private class Encoder implements ICoder {
+        private static final int HASH_BITS = 16;
+        // in the fast level the step grows while no matches are found
+        private static final int SKIP_SHIFT = 6;
+        private static final int MAX_CHAIN = 256;
+        // stream positions are rebased before they overflow
+        private static final int REBASE_LIMIT = 1 << 30;
+
+        private final byte[] history = new byte[WINDOW_SIZE + BLOCK_SIZE];
+        // little-endian, so the lowest byte of a word is the first one
+        private final ByteBuffer words = ByteBuffer.wrap(history).order(ByteOrder.LITTLE_ENDIAN);
+        private final byte[] out = new byte[HEADER_SIZE + maxEncodedSize(BLOCK_SIZE)];
+        private final int[] head = new int[1 << HASH_BITS];
+        // previous position with the same hash for every position of the window, high level only
+        private final int[] chain;
+        private int historyLength = 0;
+        private int blockStart = 0;
+        // stream position of history[0]
+        private int historyBase = 0;
+        // positions before it are in the hash chains
+        private int insertedTo = 0;
+        private int matchIndex;
+        private int matchLength;
+
+        Encoder() {
+            Arrays.fill(head, -1);
+            if (level == Level.HIGH) {
+                chain = new int[WINDOW_SIZE];
+                Arrays.fill(chain, -1);
+            }
+            else
+                chain = null;
+        }
+
+        @Override
+        public RC run(byte[] bytes, int length) {
+            if (bytes == null)
+                return historyLength > blockStart ? encodeBlock() : RC.RC_SUCCESS;
+
+            int i = 0;
+            while (i < length) {
+                int count = Integer.min(length - i, blockStart + BLOCK_SIZE - historyLength);
+                System.arraycopy(bytes, i, history, historyLength, count);
+                historyLength += count;
+                i += count;
+                if (historyLength - blockStart == BLOCK_SIZE) {
+                    RC rc = encodeBlock();
+                    if (!rc.isSuccess())
+                        return rc;
+                    if (historyLength == history.length)
+                        shiftHistory();
+                }
+            }
+            return RC.RC_SUCCESS;
+        }
+
+        private void shiftHistory() {
+            int shift = historyLength - WINDOW_SIZE;
+            System.arraycopy(history, shift, history, 0, WINDOW_SIZE);
+            historyLength = WINDOW_SIZE;
+            blockStart = WINDOW_SIZE;
+            insertedTo = Integer.max(insertedTo - shift, 0);
+            historyBase += shift;
+            if (historyBase < REBASE_LIMIT)
+                return;
+            rebase(head);
+            if (chain != null)
+                rebase(chain);
+            historyBase = 0;
+        }
+
+        private void rebase(int[] positions) {
+            for (int i = 0; i < positions.length; ++i)
+                positions[i] = positions[i] >= historyBase ? positions[i] - historyBase : -1;
+        }
+
+        @Override
+        public long getMemoryUse() {
+            long tables = head.length + (chain != null ? chain.length : 0);
+            return history.length + out.length + tables * Integer.BYTES;
+        }
+
+        private int hash(int index) {
+            return (words.getInt(index) * -1640531535) >>> (Integer.SIZE - HASH_BITS);
+        }
+
+        // length of the common prefix of history[from..] and history[index..end)
+        private int commonLength(int from, int index, int end) {
+            int length = 0;
+            while (index + length + Long.BYTES <= end) {
+                long diff = words.getLong(from + length) ^ words.getLong(index + length);
+                if (diff != 0)
+                    return length + Long.numberOfTrailingZeros(diff) / Byte.SIZE;
+                length += Long.BYTES;
+            }
+            while (index + length < end && history[from + length] == history[index + length])
+                ++length;
+            return length;
+        }
+
+        private void insertUpTo(int index) {
+            for (; insertedTo < index; ++insertedTo) {
+                int h = hash(insertedTo);
+                int position = historyBase + insertedTo;
+                chain[position & (WINDOW_SIZE - 1)] = head[h];
+                head[h] = position;
+            }
+        }
+
+        // finds the match for history[index..end) and puts it to matchIndex and matchLength
+        private void findMatch(int index, int end) {
+            matchLength = 0;
+            int position = historyBase + index;
+            int minPosition = Integer.max(position - MAX_OFFSET, historyBase);
+            if (chain == null) {
+                int h = hash(index);
+                int candidate = head[h];
+                head[h] = position;
+                if (candidate >= minPosition && words.getInt(candidate - historyBase) == words.getInt(index)) {
+                    matchIndex = candidate - historyBase;
+                    matchLength = commonLength(matchIndex, index, end);
+                }
+                return;
+            }
+
+            insertUpTo(index + 1);
+            int candidate = chain[position & (WINDOW_SIZE - 1)];
+            for (int depth = 0; depth < MAX_CHAIN && candidate >= minPosition; ++depth) {
+                int from = candidate - historyBase;
+                // a longer match must differ from the best one at its last byte
+                if (history[from + matchLength] == history[index + matchLength]) {
+                    int length = commonLength(from, index, end);
+                    if (length > matchLength) {
+                        matchLength = length;
+                        matchIndex = from;
+                        if (index + length == end)
+                            return;
+                    }
+                }
+                candidate = chain[candidate & (WINDOW_SIZE - 1)];
+            }
+        }
+
+        private int putLength(int op, int length) {
+            for (; length >= 255; length -= 255)
+                out[op++] = (byte) 255;
+            out[op++] = (byte) length;
+            return op;
+        }
+
+        private int putSequence(int op, int literalsFrom, int literalsCount, int offset, int length) {
+            int matchCode = length - MIN_MATCH;
+            out[op++] = (byte) (Integer.min(literalsCount, 15) << 4 | (length > 0 ? Integer.min(matchCode, 15) : 0));
+            if (literalsCount >= 15)
+                op = putLength(op, literalsCount - 15);
+            System.arraycopy(history, literalsFrom, out, op, literalsCount);
+            op += literalsCount;
+            if (length == 0)
+                return op;
+            out[op++] = (byte) offset;
+            out[op++] = (byte) (offset >>> 8);
+            if (matchCode >= 15)
+                op = putLength(op, matchCode - 15);
+            return op;
+        }
+
+        private RC encodeBlock() {
+            int end = historyLength;
+            int rawLength = end - blockStart;
+            int op = HEADER_SIZE;
+            int anchor = blockStart;
+            int i = blockStart;
+            // the last match starts where at least MIN_MATCH bytes are left
+            int lastMatchStart = end - MIN_MATCH;
+            while (i <= lastMatchStart) {
+                findMatch(i, end);
+                if (matchLength < MIN_MATCH) {
+                    i += chain == null ? 1 + ((i - anchor) >>> SKIP_SHIFT) : 1;
+                    continue;
+                }
+
+                int index = i;
+                int from = matchIndex;
+                int length = matchLength;
+                // lazy matching: a longer match at the next byte is better
+                if (chain != null && i + 1 <= lastMatchStart) {
+                    findMatch(i + 1, end);
+                    if (matchLength > length + 1) {
+                        index = i + 1;
+                        from = matchIndex;
+                        length = matchLength;
+                    }
+                }
+
+                op = putSequence(op, anchor, index - anchor, index - from, length);
+                i = index + length;
+                anchor = i;
+                if (chain == null && i - 2 <= lastMatchStart)
+                    head[hash(i - 2)] = historyBase + i - 2;
+            }
+            if (anchor < end)
+                op = putSequence(op, anchor, end - anchor, 0, 0);
+            blockStart = end;
+
+            putInt(out, 0, rawLength);
+            int encodedLength = op - HEADER_SIZE;
+            if (encodedLength >= rawLength) {
+                putInt(out, Integer.BYTES, rawLength | STORED_FLAG);
+                RC rc = writeToBuffer(out, 0, HEADER_SIZE);
+                if (!rc.isSuccess())
+                    return rc;
+                return writeToBuffer(history, end - rawLength, rawLength);
+            }
+            putInt(out, Integer.BYTES, encodedLength);
+            return writeToBuffer(out, 0, op);
+        }
+    }
+
+    // Keeps the last WINDOW_SIZE decoded bytes for the matches of the next blocks.
+    private class Decoder implements ICoder {
+        private final byte[] history = new byte[WINDOW_SIZE + BLOCK_SIZE];
+        private final byte[] block = new byte[maxEncodedSize(BLOCK_SIZE)];
+        private final byte[] header = new byte[HEADER_SIZE];
+        private int historyLength = 0;
+        private int headerLength = 0;
+        private int blockLength;
+        private int rawLength;
+        private int encodedLength;
+        private boolean isStored;
+
+        @Override
+        public long getMemoryUse() {
+            return history.length + block.length + header.length;
+        }
+
+        @Override
+        public RC run(byte[] bytes, int length) {
+            if (bytes == null)
+                return headerLength != 0 ? RC_INVALID_BLOCK : RC.RC_SUCCESS;
+
+            int i = 0;
+            while (i < length) {
+                if (headerLength < HEADER_SIZE) {
+                    int count = Integer.min(length - i, HEADER_SIZE - headerLength);
+                    System.arraycopy(bytes, i, header, headerLength, count);
+                    headerLength += count;
+                    i += count;
+                    if (headerLength < HEADER_SIZE)
+                        break;
+                    rawLength = getInt(header, 0);
+                    encodedLength = getInt(header, Integer.BYTES);
+                    isStored = (encodedLength & STORED_FLAG) != 0;
+                    encodedLength &= ~STORED_FLAG;
+                    if (rawLength <= 0 || rawLength > BLOCK_SIZE || encodedLength <= 0 ||
+                            encodedLength > maxEncodedSize(BLOCK_SIZE) || isStored && encodedLength != rawLength)
+                        return RC_INVALID_BLOCK;
+                    blockLength = 0;
+                }
+
+                int count = Integer.min(length - i, encodedLength - blockLength);
+                System.arraycopy(bytes, i, block, blockLength, count);
+                blockLength += count;
+                i += count;
+                if (blockLength == encodedLength) {
+                    headerLength = 0;
+                    RC rc = decodeBlock();
+                    if (!rc.isSuccess())
+                        return rc;
+                }
+            }
+            return RC.RC_SUCCESS;
+        }
+
+        private RC decodeBlock() {
+            if (historyLength + rawLength > history.length) {
+                System.arraycopy(history, historyLength - WINDOW_SIZE, history, 0, WINDOW_SIZE);
+                historyLength = WINDOW_SIZE;
+            }
+            int start = historyLength;
+            int end = start + rawLength;
+            if (isStored) {
+                System.arraycopy(block, 0, history, start, rawLength);
+                historyLength = end;
+                return writeToBuffer(history, start, rawLength);
+            }
+
+            int ip = 0;
+            int op = start;
+            while (ip < encodedLength) {
+                int token = block[ip++] & 0xFF;
+                int literalsCount = token >>> 4;
+                if (literalsCount == 15) {
+                    int b;
+                    do {
+                        if (ip == encodedLength)
+                            return RC_INVALID_BLOCK;
+                        b = block[ip++] & 0xFF;
+                        literalsCount += b;
+                    } while (b == 255);
+                }
+                if (literalsCount > encodedLength - ip || literalsCount > end - op)
+                    return RC_INVALID_BLOCK;
+                System.arraycopy(block, ip, history, op, literalsCount);
+                ip += literalsCount;
+                op += literalsCount;
+                if (ip == encodedLength)
+                    break;
+
+                if (encodedLength - ip < 2)
+                    return RC_INVALID_BLOCK;
+                int offset = (block[ip] & 0xFF) | (block[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                int length = (token & 15) + MIN_MATCH;
+                if ((token & 15) == 15) {
+                    int b;
+                    do {
+                        if (ip == encodedLength)
+                            return RC_INVALID_BLOCK;
+                        b = block[ip++] & 0xFF;
+                        length += b;
+                    } while (b == 255);
+                }
+                if (offset == 0 || offset > op || length > end - op)
+                    return RC_INVALID_BLOCK;
+                // the match may overlap itself, then the copied part doubles on every step
+                int from = op - offset;
+                while (length > 0) {
+                    int count = Integer.min(length, op - from);
+                    System.arraycopy(history, from, history, op, count);
+                    op += count;
+                    length -= count;
+                }
+            }
+            if (op != end)
+                return RC_INVALID_BLOCK;
+            historyLength = end;
+            return writeToBuffer(history, start, rawLength);
+        }
+    }
+
+    private enum Mode {
+        ENCODE ("ENCODE"),
+        DECODE ("DECODE");
+        private final String str;
+
+        Mode(String str) {
+            this.str = str;
+        }
+        String toStr() {
+            return str;
+        }
+    }
+
+    private IConsumer writer;
+    private BufferPool pool;
+    private ByteSlice slice;
+    private byte[] buffer;
+    private int bufferSize;
+    private boolean isBufferSizeAuto = false;
+    private int bufferIndex = 0;
+    private Level level = Level.FAST;
+    private ICoder coder;
+    private IMediator mediator;
+    private ILeasingMediator leasingMediator;
+    private IBufferMediator bufferMediator;
+    // the coders work with arrays, so blocks given as buffers are copied here
+    private byte[] inputArray = new byte[0];
+    final private TYPE[] supportedTypes = { TYPE.BYTE_ARRAY };
+
+    @Override
+    public RC setConfig(String s) {
+        ConfigReader configReader = new ConfigReader(RC.RCWho.EXECUTOR, new ExecutorConfigGrammar());
+        RC rc = configReader.read(s);
+        if (!rc.isSuccess())
+            return rc;
+
+        if (!configReader.hasKey(ExecutorConfigGrammar.ConfigParams.BUFFER_SIZE.toStr())) {
+            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        }
+
+        String sizeStr = configReader.getParam(ExecutorConfigGrammar.ConfigParams.BUFFER_SIZE.toStr());
+        isBufferSizeAuto = sizeStr.equalsIgnoreCase(AUTO);
+        int size = DEFAULT_SIZE;
+        if (!isBufferSizeAuto) {
+            try {
+                size = Integer.parseInt(sizeStr);
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+            }
+        }
+
+        rc = setBufferSize(size);
+        if (!rc.isSuccess())
+            return rc;
+
+        // blocks of LZ depend on each other, so they can not be coded in parallel
+        if (configReader.hasKey(ExecutorConfigGrammar.ConfigParams.BLOCK_SIZE.toStr()) ||
+                configReader.hasKey(ExecutorConfigGrammar.ConfigParams.CHECKSUM.toStr()) ||
+                configReader.hasKey(ExecutorConfigGrammar.ConfigParams.INDEX.toStr()))
+            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+
+        if (configReader.hasKey(ExecutorConfigGrammar.ConfigParams.LEVEL.toStr())) {
+            String levelStr = configReader.getParam(ExecutorConfigGrammar.ConfigParams.LEVEL.toStr());
+            level = null;
+            for (Level value : Level.values()) {
+                if (levelStr.equalsIgnoreCase(value.toStr()))
+                    level = value;
+            }
+            if (level == null)
+                return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        }
+
+        if (!configReader.hasKey(ExecutorConfigGrammar.ConfigParams.MODE.toStr())) {
+            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+        }
+        String modeStr = configReader.getParam(ExecutorConfigGrammar.ConfigParams.MODE.toStr());
+        if (modeStr.equalsIgnoreCase(Mode.ENCODE.toStr()))
+            coder = new Encoder();
+        else if (modeStr.equalsIgnoreCase(Mode.DECODE.toStr()))
+            coder = new Decoder();
+        else
+            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public boolean isBufferSizeAuto() {
+        return isBufferSizeAuto;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public long getMemoryUse() {
+        return coder != null ? coder.getMemoryUse() : 0;
+    }
+
+    @Override
+    public RC setBufferSize(int size) {
+        if (size <= 0)
+            return RC.RC_EXECUTOR_CONFIG_SEMANTIC_ERROR;
+
+        bufferSize = size;
+        pool = BufferPool.shared(bufferSize);
+        slice = pool.acquire();
+        buffer = slice.array;
+        return RC.RC_SUCCESS;
+    }
+
+    private RC writeToBuffer(byte[] bytes, int from, int count) {
+        while (count > 0) {
+            int part = Integer.min(count, bufferSize - bufferIndex);
+            System.arraycopy(bytes, from, buffer, bufferIndex, part);
+            bufferIndex += part;
+            from += part;
+            count -= part;
+            if (bufferIndex == bufferSize) {
+                // buffer may be replaced by the consumer if it leases the slice
+                RC rc = writer.consume();
+                bufferIndex = 0;
+                if (!rc.isSuccess())
+                    return rc;
+            }
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        boolean isEmptyIntersect = true;
+        TYPE intersectType = null;
+        outerLoop: for (TYPE myType : supportedTypes) {
+            for (TYPE providerType : iProvider.getOutputTypes()) {
+                if (myType == providerType) {
+                    intersectType = myType;
+                    isEmptyIntersect = false;
+                    break outerLoop;
+                }
+            }
+        }
+        if (isEmptyIntersect)
+            return RC.RC_EXECUTOR_TYPES_INTERSECTION_EMPTY_ERROR;
+
+        mediator = iProvider.getMediator(intersectType);
+        if (mediator instanceof ILeasingMediator)
+            leasingMediator = (ILeasingMediator) mediator;
+        else if (mediator instanceof IBufferMediator)
+            bufferMediator = (IBufferMediator) mediator;
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC consume() {
+        ByteSlice inSlice = null;
+        byte[] data;
+        int length;
+        if (leasingMediator != null) {
+            inSlice = leasingMediator.lease();
+            data = inSlice != null ? inSlice.array : null;
+            length = inSlice != null ? inSlice.length : 0;
+        }
+        else if (bufferMediator != null) {
+            ByteBuffer block = bufferMediator.getBuffer();
+            length = block != null ? block.remaining() : 0;
+            if (length > inputArray.length)
+                inputArray = new byte[length];
+            if (block != null)
+                block.get(inputArray, 0, length);
+            data = block != null ? inputArray : null;
+        }
+        else {
+            data = (byte[]) mediator.getData();
+            length = data != null ? data.length : 0;
+        }
+        RC rc = coder.run(data, length);
+        if (inSlice != null)
+            inSlice.release();
+        if (!rc.isSuccess())
+            return rc;
+        if (data == null) {
+            if (bufferIndex != 0) {
+                rc = writer.consume();
+                if (!rc.isSuccess())
+                    return rc;
+            }
+            bufferIndex = 0;
+            return writer.consume();
+        }
+
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setConsumer(IConsumer iConsumer) {
+        writer = iConsumer;
+        return iConsumer.setProvider(this);
+    }
+
+    @Override
+    public TYPE[] getOutputTypes() {
+        return supportedTypes;
+    }
+
+    @Override
+    public IMediator getMediator(TYPE type) {
+        if (type == TYPE.BYTE_ARRAY) {
+            class ByteArrayMediator implements ILeasingMediator, IBufferMediator {
+                @Override
+                public Object getData() {
+                    return bufferIndex > 0 ? Arrays.copyOf(buffer, bufferIndex) : null;
+                }
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    return bufferIndex > 0 ? ByteBuffer.wrap(buffer, 0, bufferIndex).asReadOnlyBuffer() : null;
+                }
+
+                // the filled slice goes to the consumer and the coder continues in a new one
+                @Override
+                public ByteSlice lease() {
+                    if (bufferIndex <= 0)
+                        return null;
+                    ByteSlice leased = slice;
+                    leased.length = bufferIndex;
+                    slice = pool.acquire();
+                    buffer = slice.array;
+                    return leased;
+                }
+            }
+            return new ByteArrayMediator();
+        }
+        else
+            return null;
+    }
+}
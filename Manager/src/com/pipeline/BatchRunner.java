@@ -0,0 +1,146 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.RC;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the pipeline for every file matched by INPUT_FILE, which is either a directory
+// or a glob in the last part of the path (like data/*.bmp). Results are written to the
+// OUTPUT_FILE directory under the same names, a fan-out pipeline has a directory for every branch.
+// The manager config and classes of the workers are resolved once, every file gets its own chain
+// of workers because workers keep the state of the stream. Files are processed by a pool of
+// BATCH_WORKERS threads (the number of processors by default).
+class BatchRunner {
+    private static final String GLOB_CHARS = "*?[{";
+
+    private final Manager batchManager;
+    private final ConfigReader configReader;
+    private int workersCount = Runtime.getRuntime().availableProcessors();
+    private final ArrayList<Path> inputs = new ArrayList<>();
+    private final ArrayList<Path> outputDirs = new ArrayList<>();
+
+    BatchRunner(Manager batchManager, ConfigReader configReader) {
+        this.batchManager = batchManager;
+        this.configReader = configReader;
+    }
+
+    static boolean isBatch(String inputFile) {
+        File file = new File(inputFile);
+        if (file.isFile())
+            return false;
+        for (char c : GLOB_CHARS.toCharArray()) {
+            if (inputFile.indexOf(c) >= 0)
+                return true;
+        }
+        return file.isDirectory();
+    }
+
+    RC setConfig(String inputFile, String outputFile) {
+        String key = ManagerConfigGrammar.ConfigParams.BATCH_WORKERS.toStr();
+        if (configReader.hasKey(key)) {
+            try {
+                workersCount = Integer.parseInt(configReader.getParam(key));
+            } catch (NumberFormatException e) {
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+            }
+            if (workersCount <= 0)
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        Path inputDir;
+        String glob = "*";
+        if (Files.isDirectory(Paths.get(inputFile)))
+            inputDir = Paths.get(inputFile);
+        else {
+            int separator = Math.max(inputFile.lastIndexOf('/'), inputFile.lastIndexOf('\\'));
+            inputDir = Paths.get(separator >= 0 ? inputFile.substring(0, separator + 1) : ".");
+            glob = inputFile.substring(separator + 1);
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inputDir, glob)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file))
+                    inputs.add(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            return RC.RC_MANAGER_INVALID_INPUT_FILE;
+        }
+
+        for (String output : outputFile.split(Manager.BRANCHES_SEPARATOR, -1)) {
+            Path outputDir = Paths.get(output.trim());
+            try {
+                Files.createDirectories(outputDir);
+                // results must not overwrite the inputs
+                if (Files.isSameFile(inputDir, outputDir))
+                    return RC.RC_MANAGER_INVALID_OUTPUT_FILE;
+            } catch (IOException | RuntimeException e) {
+                return RC.RC_MANAGER_INVALID_OUTPUT_FILE;
+            }
+            outputDirs.add(outputDir);
+        }
+
+        // the biggest files go first, so the pool does not wait for one big file in the end
+        inputs.sort((a, b) -> Long.compare(sizeOf(b), sizeOf(a)));
+        return RC.RC_SUCCESS;
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private RC runFile(Path input) {
+        StringBuilder outputFile = new StringBuilder();
+        for (Path outputDir : outputDirs) {
+            if (outputFile.length() > 0)
+                outputFile.append(Manager.BRANCHES_SEPARATOR);
+            outputFile.append(outputDir.resolve(input.getFileName()));
+        }
+        return Manager.runWithTemplate(batchManager, configReader, input.toString(), outputFile.toString());
+    }
+
+    RC run() {
+        AtomicInteger threadsCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workersCount,
+                r -> new Thread(r, "batch-worker-" + threadsCount.incrementAndGet()));
+        ArrayList<Future<RC>> results = new ArrayList<>();
+        for (Path input : inputs)
+            results.add(pool.submit(() -> runFile(input)));
+        pool.shutdown();
+
+        // a failed file does not stop the others, every failure is reported and the first one is returned
+        RC firstFailure = RC.RC_SUCCESS;
+        int failuresCount = 0;
+        for (int i = 0; i < results.size(); ++i) {
+            RC rc;
+            try {
+                rc = results.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                rc = new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Batch was interrupted");
+            }
+            if (!rc.isSuccess()) {
+                RC fileRc = new RC(rc.who, rc.type, inputs.get(i) + ": " + rc.info);
+                Manager.handleError(fileRc);
+                if (firstFailure.isSuccess())
+                    firstFailure = fileRc;
+                ++failuresCount;
+            }
+        }
+        System.out.println("Processed " + inputs.size() + " files, failed " + failuresCount);
+        return firstFailure;
+    }
+}
@@ -0,0 +1,88 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.util.function.Supplier;
+
+// Stands between the reader and its consumer in the sequential mode and makes a checkpoint
+// every CHECKPOINT_INTERVAL, right after a block has passed the whole pipeline,
+// so no stage is in the middle of its work while the states are saved.
+// For appending the states are also saved right before the end of data is passed on.
+class CheckpointLink implements IConsumer, IProvider {
+    // 0 if there are no checkpoints
+    private final long intervalNanos;
+    private final Supplier<RC> checkpoint;
+    // null if nothing is saved at the end of data
+    private final Supplier<RC> beforeEnd;
+    private IProvider provider;
+    private IConsumer consumer;
+    // tells the end of data without taking the block from the provider
+    private IMediator endProbe;
+    private long lastCheckpoint = System.nanoTime();
+    // states of the stages are not consistent after a failure, so they are not saved anymore
+    private boolean isFailed = false;
+
+    CheckpointLink(long intervalNanos, Supplier<RC> checkpoint, Supplier<RC> beforeEnd) {
+        this.intervalNanos = intervalNanos;
+        this.checkpoint = checkpoint;
+        this.beforeEnd = beforeEnd;
+    }
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        provider = iProvider;
+        if (beforeEnd != null) {
+            endProbe = provider.getMediator(TYPE.BYTE_ARRAY);
+            if (endProbe == null)
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setConsumer(IConsumer iConsumer) {
+        consumer = iConsumer;
+        return iConsumer.setProvider(this);
+    }
+
+    @Override
+    public TYPE[] getOutputTypes() {
+        return provider.getOutputTypes();
+    }
+
+    @Override
+    public IMediator getMediator(TYPE type) {
+        return provider.getMediator(type);
+    }
+
+    // readers show their block as a buffer, so nothing is copied
+    private boolean isEnd() {
+        if (endProbe instanceof IBufferMediator)
+            return ((IBufferMediator) endProbe).getBuffer() == null;
+        return endProbe.getData() == null;
+    }
+
+    @Override
+    public RC consume() {
+        if (beforeEnd != null && !isFailed && isEnd()) {
+            RC rc = beforeEnd.get();
+            if (!rc.isSuccess()) {
+                isFailed = true;
+                consumer.consume();
+                return rc;
+            }
+        }
+
+        RC rc = consumer.consume();
+        if (!rc.isSuccess())
+            isFailed = true;
+        if (isFailed || intervalNanos == 0 || System.nanoTime() - lastCheckpoint < intervalNanos)
+            return rc;
+
+        rc = checkpoint.get();
+        if (!rc.isSuccess())
+            isFailed = true;
+        lastCheckpoint = System.nanoTime();
+        return rc;
+    }
+}
@@ -2,83 +2,247 @@ package com.pipeline;
 
 import com.java_polytech.pipeline_interfaces.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.logging.FileHandler;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class Manager implements IConfigurable {
+    private static final long DEFAULT_BUFFER_MEMORY = 64 * 1024 * 1024;
+    // AUTO buffer sizes are multiples of the page and not larger than the maximum
+    private static final int AUTO_BUFFER_ALIGNMENT = 4096;
+    private static final int MAX_AUTO_BUFFER_SIZE = 4 * 1024 * 1024;
+    // separates the branches of a fan-out pipeline in OUTPUT_FILE and in the parameters of the branches
+    static final String BRANCHES_SEPARATOR = ";";
+    static final String RESUME_OPTION = "--resume";
+    static final String RANGE_OPTION = "--range";
+    // the checkpoint and the state for appending are kept next to the output file
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String APPEND_STATE_SUFFIX = ".state";
+    private static final int CHECKPOINT_MAGIC = 0x50434B31;
     IReader reader;
-    ArrayList<IExecutor> executors = new ArrayList<>();
+    // every branch has its own executors, writer and output file, all of them are fed by the reader
+    ArrayList<Branch> branches = new ArrayList<>();
     String executorsSeparator = ",";
     String configsSeparator = ",";
-    IWriter writer;
+    // not null if there are several branches
+    TeeLink tee;
+    ArrayList<StageLink> links = new ArrayList<>();
+    boolean isParallel = false;
+    int queueSize = 4;
+    boolean isMetered = false;
+    // memory shared by buffers of the stages with AUTO buffer size
+    long bufferMemory = DEFAULT_BUFFER_MEMORY;
+    // not null if the pipeline is run by PipelineJobs, then it takes memory for its buffers from the budget
+    MemoryBudget memoryBudget;
+    long reservedMemory = 0;
+    // seconds between checkpoints, 0 if there are no checkpoints
+    long checkpointInterval = 0;
+    // the pipeline continues from its checkpoint if there is one
+    boolean isResumed = false;
+    String checkpointFile;
+    // the output is continued with the new tail of the input, states of the stages at the end of data are kept for it
+    boolean isAppended = false;
+    String appendStateFile;
+    // states of the stages from the checkpoint or the append state to continue from
+    ArrayList<String> savedStages;
+    ArrayList<byte[]> savedStates;
+    // raw bytes to decode from an indexed INPUT_FILE, rangeLength is 0 if the whole input is processed
+    long rangeFrom = 0;
+    long rangeLength = 0;
+    // end of the range in the raw data and the decoded bytes of the first frame before the range
+    private long rangeEnd;
+    private long rangeSkip;
+    // streams of the reader and the writer which see only the range
+    InputStream rangeInput;
+    OutputStream rangeOutput;
+    // reader, then executors and writer of every branch in the order of the pipeline
+    ArrayList<StageMetrics> metrics = new ArrayList<>();
+    private static final AtomicInteger pipelinesCount = new AtomicInteger();
+    private static final RC RC_INVALID_CHECKPOINT =
+            new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Invalid checkpoint or append state file");
+    // constructors of the stages
+    Supplier<IReader> readerStage;
+    ArrayList<ArrayList<Supplier<IExecutor>>> executorsStages = new ArrayList<>();
+    ArrayList<Supplier<IWriter>> writersStages = new ArrayList<>();
+    // not null if INPUT_FILE is a directory or a glob, then the manager only runs the batch
+    BatchRunner batch;
     FileInputStream fin;
-    FileOutputStream fout;
+    private static String logFile;
     private static Logger logger;
 
-    private RC openStreams(ConfigReader configReader) {
+    static class Branch {
+        final ArrayList<IExecutor> executors = new ArrayList<>();
+        IWriter writer;
+        FileOutputStream fout;
+    }
+
+    public Manager() {}
+
+    // the manager for one file of a batch, it takes everything but the files from the batch manager
+    Manager(Manager batchManager) {
+        isParallel = batchManager.isParallel;
+        queueSize = batchManager.queueSize;
+        isMetered = batchManager.isMetered;
+        bufferMemory = batchManager.bufferMemory;
+        memoryBudget = batchManager.memoryBudget;
+        checkpointInterval = batchManager.checkpointInterval;
+        isAppended = batchManager.isAppended;
+        isResumed = batchManager.isResumed;
+        readerStage = batchManager.readerStage;
+        executorsStages = batchManager.executorsStages;
+        writersStages = batchManager.writersStages;
+    }
+
+    // parameter of a branch is either given for every branch or once for all of them
+    private static String[] splitBranches(String param, int branchesCount) {
+        String[] params = param.split(BRANCHES_SEPARATOR, -1);
+        if (params.length == 1 && branchesCount > 1) {
+            params = new String[branchesCount];
+            Arrays.fill(params, param);
+        }
+        return params;
+    }
+
+    private RC openStreams(String inputFile, String outputFile) {
         try {
-            fin = new FileInputStream(configReader.getParam(ManagerConfigGrammar.ConfigParams.INPUT_FILE.toStr()));
+            fin = new FileInputStream(inputFile);
         } catch (FileNotFoundException e) {
             return RC.RC_MANAGER_INVALID_INPUT_FILE;
         }
 
-        try {
-            fout = new FileOutputStream(configReader.getParam(ManagerConfigGrammar.ConfigParams.OUTPUT_FILE.toStr()));
-        } catch (FileNotFoundException e) {
-            return RC.RC_MANAGER_INVALID_OUTPUT_FILE;
+        // the range is checked before the output files are opened, they are truncated on opening
+        if (rangeLength > 0) {
+            RC rc = openRange();
+            if (!rc.isSuccess())
+                return rc;
+        }
+
+        String[] outputFiles = outputFile.split(BRANCHES_SEPARATOR, -1);
+        if (outputFiles.length != branches.size())
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                    "OUTPUT_FILE must have a file for every branch of EXECUTORS_NAMES");
+        for (int i = 0; i < outputFiles.length; ++i) {
+            try {
+                // the resumed pipeline continues the output, the writer cuts off what was written after the checkpoint
+                branches.get(i).fout = new FileOutputStream(outputFiles[i].trim(), savedStates != null);
+            } catch (FileNotFoundException e) {
+                return RC.RC_MANAGER_INVALID_OUTPUT_FILE;
+            }
         }
 
+        if (rangeLength > 0)
+            rangeOutput = new RangeStreams.Output(branches.get(0).fout, rangeSkip, rangeEnd - rangeFrom);
         return RC.RC_SUCCESS;
     }
 
-    private RC findClasses(ConfigReader configReader) {
-        String key = ManagerConfigGrammar.ConfigParams.READER_NAME.toStr();
+    // the reader gets only the frames which cover the range, the writer writes only the bytes of the range
+    private RC openRange() {
+        if (branches.size() > 1)
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                    "Range is decoded by one branch only");
+        BlockIndex index;
         try {
-            Class<?> ReaderClass = Class.forName(configReader.getParam(key));
-            if (IReader.class.isAssignableFrom(ReaderClass))
-                reader = (IReader)ReaderClass.getDeclaredConstructor().newInstance();
-            else
-                return RC.RC_MANAGER_INVALID_READER_CLASS;
+            index = BlockIndex.read(fin.getChannel());
+        } catch (IOException e) {
+            return RC.RC_MANAGER_INVALID_INPUT_FILE;
+        }
+        if (index == null)
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "INPUT_FILE has no block index");
+        if (rangeFrom >= index.getRawSize())
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Range starts after the end of the data");
+
+        // LENGTH may be as large as Long.MAX_VALUE, so the end is clamped without adding
+        rangeEnd = rangeLength >= index.getRawSize() - rangeFrom ? index.getRawSize() : rangeFrom + rangeLength;
+        int firstFrame = (int) (rangeFrom / index.getBlockSize());
+        int lastFrame = (int) ((rangeEnd - 1) / index.getBlockSize());
+        try {
+            fin.getChannel().position(index.getFrameStart(firstFrame));
+        } catch (IOException e) {
+            return RC.RC_MANAGER_INVALID_INPUT_FILE;
+        }
+        rangeInput = new RangeStreams.Input(fin, index.getFrameEnd(lastFrame) - index.getFrameStart(firstFrame));
+        rangeSkip = rangeFrom - (long) firstFrame * index.getBlockSize();
+        return RC.RC_SUCCESS;
+    }
 
-        } catch (Exception e) {
+    private RC findStages(ConfigReader configReader) {
+        String key = ManagerConfigGrammar.ConfigParams.READER_NAME.toStr();
+        readerStage = StageRegistry.findReader(configReader.getParam(key).trim());
+        if (readerStage == null)
             return RC.RC_MANAGER_INVALID_READER_CLASS;
-        }
 
         key = ManagerConfigGrammar.ConfigParams.EXECUTORS_NAMES.toStr();
-        String executorsStr = configReader.getParam(key);
-        String[] executorsNamesArr = executorsStr.split(executorsSeparator);
-        if (executorsNamesArr.length < 1)
-            return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
-        for (String executor : executorsNamesArr) {
-            executor = executor.trim();
-            try {
-                Class<?> ExecutorClass = Class.forName(executor);
-                if (IExecutor.class.isAssignableFrom(ExecutorClass))
-                    executors.add((IExecutor)ExecutorClass.getDeclaredConstructor().newInstance());
-                else
+        String[] branchesStr = configReader.getParam(key).split(BRANCHES_SEPARATOR, -1);
+        for (String executorsStr : branchesStr) {
+            String[] executorsNamesArr = executorsStr.split(executorsSeparator);
+            if (executorsNamesArr.length < 1)
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+            ArrayList<Supplier<IExecutor>> branchStages = new ArrayList<>();
+            for (String executor : executorsNamesArr) {
+                Supplier<IExecutor> executorStage = StageRegistry.findExecutor(executor.trim());
+                if (executorStage == null)
                     return RC.RC_MANAGER_INVALID_EXECUTOR_CLASS;
-
-            } catch (Exception e) {
-                return RC.RC_MANAGER_INVALID_EXECUTOR_CLASS;
+                branchStages.add(executorStage);
             }
+            executorsStages.add(branchStages);
         }
 
         key = ManagerConfigGrammar.ConfigParams.WRITER_NAME.toStr();
-        try {
-            Class<?> WriterClass = Class.forName(configReader.getParam(key));
-            if (IWriter.class.isAssignableFrom(WriterClass))
-                writer = (IWriter) WriterClass.getDeclaredConstructor().newInstance();
-            else
+        String[] writersNames = splitBranches(configReader.getParam(key), branchesStr.length);
+        if (writersNames.length != branchesStr.length)
+            return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        for (String writerName : writersNames) {
+            Supplier<IWriter> writerStage = StageRegistry.findWriter(writerName.trim());
+            if (writerStage == null)
                 return RC.RC_MANAGER_INVALID_WRITER_CLASS;
+            writersStages.add(writerStage);
+        }
 
-        } catch (Exception e) {
-            return RC.RC_MANAGER_INVALID_WRITER_CLASS;
+        return RC.RC_SUCCESS;
+    }
+
+    private RC createWorkers() {
+        reader = readerStage.get();
+        if (reader == null)
+            return RC.RC_MANAGER_INVALID_READER_CLASS;
+
+        for (int i = 0; i < executorsStages.size(); ++i) {
+            Branch branch = new Branch();
+            branches.add(branch);
+            for (Supplier<IExecutor> executorStage : executorsStages.get(i)) {
+                IExecutor executor = executorStage.get();
+                if (executor == null)
+                    return RC.RC_MANAGER_INVALID_EXECUTOR_CLASS;
+                branch.executors.add(executor);
+            }
+
+            branch.writer = writersStages.get(i).get();
+            if (branch.writer == null)
+                return RC.RC_MANAGER_INVALID_WRITER_CLASS;
         }
 
         return RC.RC_SUCCESS;
@@ -89,43 +253,387 @@ public class Manager implements IConfigurable {
         if (!rc.isSuccess())
             return rc;
 
-        String configsStr = configReader.getParam(ManagerConfigGrammar.ConfigParams.EXECUTORS_CONFIGS.toStr());
-        String[] configs = configsStr.split(configsSeparator);
-        if (configs.length != executors.size())
+        String[] branchesConfigs = configReader.getParam(ManagerConfigGrammar.ConfigParams.EXECUTORS_CONFIGS.toStr())
+                .split(BRANCHES_SEPARATOR, -1);
+        String[] writersConfigs = splitBranches(
+                configReader.getParam(ManagerConfigGrammar.ConfigParams.WRITER_CONFIG.toStr()), branches.size());
+        if (branchesConfigs.length != branches.size() || writersConfigs.length != branches.size())
             return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
-        for (int i = 0; i < configs.length; ++i) {
-            String config = configs[i].trim();
-            rc = executors.get(i).setConfig(config);
+
+        for (int b = 0; b < branches.size(); ++b) {
+            ArrayList<IExecutor> executors = branches.get(b).executors;
+            String[] configs = branchesConfigs[b].split(configsSeparator);
+            if (configs.length != executors.size())
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+            for (int i = 0; i < configs.length; ++i) {
+                String config = configs[i].trim();
+                rc = executors.get(i).setConfig(config);
+                if (!rc.isSuccess())
+                    return rc;
+            }
+
+            rc = branches.get(b).writer.setConfig(writersConfigs[b].trim());
+            if (!rc.isSuccess())
+                return rc;
+        }
+
+        return RC.RC_SUCCESS;
+    }
+
+    private RC readPipelineMode(ConfigReader configReader) {
+        String key = ManagerConfigGrammar.ConfigParams.PIPELINE_MODE.toStr();
+        if (configReader.hasKey(key)) {
+            String modeStr = configReader.getParam(key);
+            if (modeStr.equalsIgnoreCase(ManagerConfigGrammar.PipelineMode.PARALLEL.toStr()))
+                isParallel = true;
+            else if (!modeStr.equalsIgnoreCase(ManagerConfigGrammar.PipelineMode.SEQUENTIAL.toStr()))
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        key = ManagerConfigGrammar.ConfigParams.QUEUE_SIZE.toStr();
+        if (configReader.hasKey(key)) {
+            try {
+                queueSize = Integer.parseInt(configReader.getParam(key));
+            } catch (NumberFormatException e) {
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+            }
+            if (queueSize <= 0)
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        key = ManagerConfigGrammar.ConfigParams.CHECKPOINT_INTERVAL.toStr();
+        if (configReader.hasKey(key)) {
+            try {
+                checkpointInterval = Long.parseLong(configReader.getParam(key));
+            } catch (NumberFormatException e) {
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+            }
+            if (checkpointInterval <= 0)
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        key = ManagerConfigGrammar.ConfigParams.APPEND.toStr();
+        if (configReader.hasKey(key)) {
+            String appendStr = configReader.getParam(key);
+            if (appendStr.equalsIgnoreCase("ON"))
+                isAppended = true;
+            else if (!appendStr.equalsIgnoreCase("OFF"))
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        if (isSaved() && isParallel)
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                    "CHECKPOINT_INTERVAL and APPEND are supported in the sequential mode only");
+        // a range is decoded in moments into a new file
+        if (rangeLength > 0) {
+            checkpointInterval = 0;
+            isAppended = false;
+        }
+        if (isResumed && checkpointInterval == 0)
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                    "CHECKPOINT_INTERVAL must be set to resume the pipeline");
+
+        key = ManagerConfigGrammar.ConfigParams.BUFFER_MEMORY.toStr();
+        if (configReader.hasKey(key)) {
+            try {
+                bufferMemory = Long.parseLong(configReader.getParam(key));
+            } catch (NumberFormatException e) {
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+            }
+            if (bufferMemory <= 0)
+                return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        return RC.RC_SUCCESS;
+    }
+
+    private ArrayList<Object> getStages() {
+        ArrayList<Object> stages = new ArrayList<>();
+        stages.add(reader);
+        for (Branch branch : branches) {
+            stages.addAll(branch.executors);
+            stages.add(branch.writer);
+        }
+        return stages;
+    }
+
+    // every stage may hold a buffer for every place in its queue in the parallel mode
+    // or two buffers in the sequential mode
+    private int getBuffersPerStage() {
+        return isParallel ? queueSize + 2 : 2;
+    }
+
+    // stages with AUTO buffer size share BUFFER_MEMORY equally
+    private RC setAutoBufferSizes() {
+        ArrayList<IAutoBuffer> autoStages = new ArrayList<>();
+        for (Object stage : getStages()) {
+            if (stage instanceof IAutoBuffer && ((IAutoBuffer) stage).isBufferSizeAuto())
+                autoStages.add((IAutoBuffer) stage);
+        }
+        if (autoStages.isEmpty())
+            return RC.RC_SUCCESS;
+
+        long size = bufferMemory / ((long) autoStages.size() * getBuffersPerStage());
+        size = Long.min(size, MAX_AUTO_BUFFER_SIZE) / AUTO_BUFFER_ALIGNMENT * AUTO_BUFFER_ALIGNMENT;
+        if (size == 0)
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                    "BUFFER_MEMORY is too small for AUTO buffer sizes");
+
+        for (IAutoBuffer stage : autoStages) {
+            RC rc = stage.setBufferSize((int) size);
             if (!rc.isSuccess())
                 return rc;
         }
+        return RC.RC_SUCCESS;
+    }
+
+    // memory of the buffers of the pipeline and of what the stages hold besides them,
+    // stages which do not tell their buffer size are counted with the default one
+    private long getBuffersMemory() {
+        long memory = 0;
+        for (Object stage : getStages()) {
+            if (stage instanceof IAutoBuffer) {
+                IAutoBuffer autoStage = (IAutoBuffer) stage;
+                memory += (long) autoStage.getBufferSize() * getBuffersPerStage() + autoStage.getMemoryUse();
+            }
+            else
+                memory += (long) IAutoBuffer.DEFAULT_SIZE * getBuffersPerStage();
+        }
+        return memory;
+    }
+
+    private RC reserveMemory() {
+        if (memoryBudget == null)
+            return RC.RC_SUCCESS;
+        long memory = getBuffersMemory();
+        try {
+            memoryBudget.acquire(memory);
+        } catch (InterruptedException e) {
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Pipeline was interrupted");
+        }
+        reservedMemory = memory;
+        return RC.RC_SUCCESS;
+    }
+
+    // states of the stages are saved for checkpoints or for appending
+    private boolean isSaved() {
+        return checkpointInterval > 0 || isAppended;
+    }
+
+    // states are saved between blocks of the reader, so every stage must be able to save its state
+    // and the blocks must pass the whole pipeline in the thread of the reader
+    private RC checkCheckpoints() {
+        if (!isSaved())
+            return RC.RC_SUCCESS;
+        if (branches.size() > 1)
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                    "CHECKPOINT_INTERVAL and APPEND are not supported for several branches");
+        for (Object stage : getStages()) {
+            if (!(stage instanceof ICheckpointable))
+                return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                        stage.getClass().getName() + " can not save its state");
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    // a new run removes the checkpoint of the previous one, a resumed run reads it if there is one,
+    // otherwise an appending run reads the state of the stages at the end of the previous run
+    private RC prepareCheckpoint(String outputFile) {
+        String output = outputFile.trim();
+        if (checkpointInterval > 0)
+            checkpointFile = output + CHECKPOINT_SUFFIX;
+        if (isAppended)
+            appendStateFile = output + APPEND_STATE_SUFFIX;
+        try {
+            if (checkpointFile != null) {
+                if (isResumed && new File(checkpointFile).isFile())
+                    return readStates(checkpointFile);
+                Files.deleteIfExists(Paths.get(checkpointFile));
+            }
+            // without the output the input is coded from its start
+            if (appendStateFile != null && new File(appendStateFile).isFile() && new File(output).isFile())
+                return readStates(appendStateFile);
+        } catch (IOException e) {
+            return RC_INVALID_CHECKPOINT;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC readStates(String file) {
+        savedStages = new ArrayList<>();
+        savedStates = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != CHECKPOINT_MAGIC)
+                return RC_INVALID_CHECKPOINT;
+            int stagesCount = in.readInt();
+            for (int i = 0; i < stagesCount; ++i) {
+                savedStages.add(in.readUTF());
+                byte[] state = new byte[in.readInt()];
+                in.readFully(state);
+                savedStates.add(state);
+            }
+        } catch (IOException e) {
+            return RC_INVALID_CHECKPOINT;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC restoreStates() {
+        ArrayList<Object> stages = getStages();
+        if (stages.size() != savedStages.size())
+            return RC_INVALID_CHECKPOINT;
+        for (int i = 0; i < stages.size(); ++i) {
+            if (!stages.get(i).getClass().getName().equals(savedStages.get(i)))
+                return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR,
+                        "Saved states were made by another pipeline");
+            RC rc = ((ICheckpointable) stages.get(i)).restoreState(
+                    new DataInputStream(new ByteArrayInputStream(savedStates.get(i))));
+            if (!rc.isSuccess())
+                return rc;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC checkpoint() {
+        return saveStates(checkpointFile);
+    }
+
+    // the state for appending is saved right before the end of data passes the pipeline,
+    // the output written after it is cut off by the next run
+    private RC saveAppendState() {
+        return saveStates(appendStateFile);
+    }
+
+    // the output is forced to the disk before the file of the states is replaced,
+    // so the states never count bytes which could be lost
+    private RC saveStates(String file) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            ArrayList<Object> stages = getStages();
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(stages.size());
+            // stages are saved in the order of the pipeline, a stage may pass its pending data to the next ones
+            for (Object stage : stages) {
+                ByteArrayOutputStream state = new ByteArrayOutputStream();
+                RC rc = ((ICheckpointable) stage).saveState(new DataOutputStream(state));
+                if (!rc.isSuccess())
+                    return rc;
+                out.writeUTF(stage.getClass().getName());
+                out.writeInt(state.size());
+                state.writeTo(out);
+            }
+            branches.get(0).fout.getFD().sync();
+
+            Path temp = Paths.get(file + ".tmp");
+            try (FileOutputStream tempOut = new FileOutputStream(temp.toFile())) {
+                bytes.writeTo(tempOut);
+                tempOut.getFD().sync();
+            }
+            Files.move(temp, Paths.get(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Could not write " + file + ": " + e.getMessage());
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC readMetricsMode(ConfigReader configReader) {
+        String key = ManagerConfigGrammar.ConfigParams.METRICS.toStr();
+        if (!configReader.hasKey(key))
+            return RC.RC_SUCCESS;
 
-        rc = writer.setConfig(configReader.getParam(ManagerConfigGrammar.ConfigParams.WRITER_CONFIG.toStr()));
+        String metricsStr = configReader.getParam(key);
+        if (metricsStr.equalsIgnoreCase("ON"))
+            isMetered = true;
+        else if (!metricsStr.equalsIgnoreCase("OFF"))
+            return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        return RC.RC_SUCCESS;
+    }
 
+    // in the parallel mode every consumer gets its own StageLink, so it is fed by a separate thread,
+    // so do the first stages of the branches after the tee in any mode.
+    // With metrics on every consumer also gets a MeteringLink right before it
+    private RC connect(IProvider provider, int providerIndex, IConsumer consumer, int consumerIndex) {
+        boolean isLinked = isParallel || provider == tee;
+        IConsumer first = consumer;
+        MeteringLink meter = null;
+        if (isMetered) {
+            // the tee counts the output of the reader, otherwise every branch would count it again
+            meter = new MeteringLink(provider == tee ? null : metrics.get(providerIndex),
+                    metrics.get(consumerIndex), !isLinked);
+            first = meter;
+        }
+
+        RC rc;
+        if (isLinked) {
+            StageLink link = new StageLink(queueSize);
+            links.add(link);
+            rc = provider.setConsumer(link);
+            if (rc.isSuccess())
+                rc = link.setConsumer(first);
+        }
+        else
+            rc = provider.setConsumer(first);
+
+        if (rc.isSuccess() && meter != null)
+            rc = meter.setConsumer(consumer);
         return rc;
     }
 
     private RC configureWorkers() {
-        RC rc = reader.setInputStream(fin);
+        RC rc = reader.setInputStream(rangeInput != null ? rangeInput : fin);
         if (!rc.isSuccess())
             return rc;
 
-        rc = writer.setOutputStream(fout);
-        if (!rc.isSuccess())
-            return rc;
+        for (Branch branch : branches) {
+            rc = branch.writer.setOutputStream(rangeOutput != null ? rangeOutput : branch.fout);
+            if (!rc.isSuccess())
+                return rc;
+        }
 
-        rc = reader.setConsumer(executors.get(0));
-        if (!rc.isSuccess())
-            return rc;
+        if (isMetered) {
+            metrics.add(new StageMetrics(reader.getClass().getName()));
+            for (int b = 0; b < branches.size(); ++b) {
+                String prefix = branches.size() > 1 ? "[" + (b + 1) + "] " : "";
+                for (IExecutor executor : branches.get(b).executors)
+                    metrics.add(new StageMetrics(prefix + executor.getClass().getName()));
+                metrics.add(new StageMetrics(prefix + branches.get(b).writer.getClass().getName()));
+            }
+        }
 
-        for (int i = 0; i < executors.size() - 1; ++i) {
-            rc = executors.get(i).setConsumer(executors.get(i + 1));
+        // several branches read the same blocks through the tee
+        IProvider source = reader;
+        if (branches.size() > 1) {
+            tee = new TeeLink(isMetered ? metrics.get(0) : null);
+            rc = reader.setConsumer(tee);
+            if (!rc.isSuccess())
+                return rc;
+            source = tee;
+        }
+        else if (isSaved()) {
+            CheckpointLink checkpointLink = new CheckpointLink(TimeUnit.SECONDS.toNanos(checkpointInterval),
+                    this::checkpoint, isAppended ? this::saveAppendState : null);
+            rc = reader.setConsumer(checkpointLink);
+            if (!rc.isSuccess())
+                return rc;
+            source = checkpointLink;
+        }
+
+        int index = 1;
+        for (Branch branch : branches) {
+            IProvider provider = source;
+            int providerIndex = 0;
+            for (IExecutor executor : branch.executors) {
+                rc = connect(provider, providerIndex, executor, index);
+                if (!rc.isSuccess())
+                    return rc;
+                provider = executor;
+                providerIndex = index++;
+            }
+            rc = connect(provider, providerIndex, branch.writer, index++);
             if (!rc.isSuccess())
                 return rc;
         }
-        rc = executors.get(executors.size() - 1).setConsumer(writer);
-        if (!rc.isSuccess())
-            return rc;
 
         return RC.RC_SUCCESS;
     }
@@ -137,26 +645,92 @@ public class Manager implements IConfigurable {
         if (!rc.isSuccess())
             return rc;
 
+        rc = setManagerConfig(configReader);
+        if (!rc.isSuccess())
+            return rc;
+
+        String inputFile = configReader.getParam(ManagerConfigGrammar.ConfigParams.INPUT_FILE.toStr());
+        String outputFile = configReader.getParam(ManagerConfigGrammar.ConfigParams.OUTPUT_FILE.toStr());
+        return setFilesConfig(configReader, inputFile, outputFile);
+    }
+
+    // logger is shared by all managers in the process, so the log file is opened only once
+    private static synchronized void initLogger(String file) {
+        if (logFile == null)
+            logFile = file;
+    }
+
+    // the log file is opened with the first message, so runs which have nothing to log
+    // do not spend their start on java.util.logging
+    private static synchronized Logger getLogger() {
+        if (logger != null || logFile == null)
+            return logger;
         try {
             logger = Logger.getLogger("logger");
-            String logFileParam =  ManagerConfigGrammar.ConfigParams.LOG_FILE.toStr();
-            FileHandler fileHandler = new FileHandler(configReader.getParam(logFileParam));
+            FileHandler fileHandler = new FileHandler(logFile);
             fileHandler.setFormatter(new SimpleFormatter());
             logger.addHandler(fileHandler);
         } catch (IOException ignored) {}
+        return logger;
+    }
+
+    // reads everything but the files, so the manager can be used as a template for managers of several files
+    RC setManagerConfig(ConfigReader configReader) {
+        initLogger(configReader.getParam(ManagerConfigGrammar.ConfigParams.LOG_FILE.toStr()));
 
         for (ManagerConfigGrammar.ConfigParams param : ManagerConfigGrammar.ConfigParams.values()) {
-            if (!configReader.hasKey(param.toStr()))
+            if (param.isRequired() && !configReader.hasKey(param.toStr()))
                 return new RC(RC.RCWho.MANAGER,
                         RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
                         "Config must contain parameter " + param.toStr());
         }
 
-        rc = findClasses(configReader);
+        RC rc = readPipelineMode(configReader);
+        if (!rc.isSuccess())
+            return rc;
+
+        rc = readMetricsMode(configReader);
+        if (!rc.isSuccess())
+            return rc;
+
+        return findStages(configReader);
+    }
+
+    RC setFilesConfig(ConfigReader configReader, String inputFile, String outputFile) {
+        if (BatchRunner.isBatch(inputFile)) {
+            if (rangeLength > 0)
+                return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CONFIG_SEMANTIC_ERROR,
+                        "Range is decoded from one INPUT_FILE only");
+            batch = new BatchRunner(this, configReader);
+            return batch.setConfig(inputFile, outputFile);
+        }
+
+        return setPipelineConfig(configReader, inputFile, outputFile);
+    }
+
+    // runs the pipeline for the files with a new manager, which takes everything else from the template
+    static RC runWithTemplate(Manager template, ConfigReader configReader, String inputFile, String outputFile) {
+        Manager manager = new Manager(template);
+        RC rc = manager.setFilesConfig(configReader, inputFile, outputFile);
+        if (!rc.isSuccess()) {
+            manager.closeStreams();
+            return rc;
+        }
+        try {
+            return manager.runPipeline();
+        } catch (RuntimeException e) {
+            manager.closeStreams();
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Pipeline failed: " + e);
+        }
+    }
+
+    // builds the pipeline for one file, classes of the workers must be already found
+    RC setPipelineConfig(ConfigReader configReader, String inputFile, String outputFile) {
+        RC rc = createWorkers();
         if (!rc.isSuccess())
             return rc;
 
-        rc = openStreams(configReader);
+        rc = checkCheckpoints();
         if (!rc.isSuccess())
             return rc;
 
@@ -164,27 +738,158 @@ public class Manager implements IConfigurable {
         if (!rc.isSuccess())
             return rc;
 
+        rc = setAutoBufferSizes();
+        if (!rc.isSuccess())
+            return rc;
+
+        // buffers are allocated only when the pipeline runs, so it waits for its memory before it opens the files
+        rc = reserveMemory();
+        if (!rc.isSuccess())
+            return rc;
+
+        rc = prepareCheckpoint(outputFile);
+        if (!rc.isSuccess())
+            return rc;
+
+        rc = openStreams(inputFile, outputFile);
+        if (!rc.isSuccess())
+            return rc;
+
         rc = configureWorkers();
         if (!rc.isSuccess())
             return rc;
 
+        if (savedStates != null)
+            return restoreStates();
         return RC.RC_SUCCESS;
     }
 
+    // the reader runs in its own thread, the rest of the stages in the threads of the links
+    private RC runLinked() {
+        for (StageLink link : links)
+            link.start();
+
+        RC[] readerRc = { RC.RC_SUCCESS };
+        Thread readerThread = new Thread(() -> {
+            try {
+                readerRc[0] = reader.run();
+            } catch (RuntimeException e) {
+                readerRc[0] = new RC(RC.RCWho.READER, RC.RCType.CODE_CUSTOM_ERROR, "Reader failed: " + e);
+            }
+        }, "pipeline-reader");
+        readerThread.start();
+        try {
+            readerThread.join();
+        } catch (InterruptedException e) {
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Pipeline was interrupted");
+        }
+
+        // normally the end of stream has already passed all the links,
+        // but a stage could stop without passing it further
+        RC rc = readerRc[0];
+        for (StageLink link : links) {
+            RC linkRc = link.close();
+            if (rc.isSuccess())
+                rc = linkRc;
+        }
+        return rc;
+    }
+
+    private ArrayList<ObjectName> registerMetrics() {
+        ArrayList<ObjectName> names = new ArrayList<>();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        int pipeline = pipelinesCount.incrementAndGet();
+        for (int i = 0; i < metrics.size(); ++i) {
+            try {
+                ObjectName name = new ObjectName("com.pipeline:type=Stage,pipeline=" + pipeline + ",stage=" + i);
+                server.registerMBean(metrics.get(i), name);
+                names.add(name);
+            } catch (JMException e) {
+                handleError(new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Could not register metrics: " + e));
+            }
+        }
+        return names;
+    }
+
+    private void unregisterMetrics(ArrayList<ObjectName> names) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : names) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException ignored) {}
+        }
+    }
+
+    private void reportMetrics() {
+        StringBuilder report = new StringBuilder(String.format("%-45s %10s %14s %14s %8s %12s %14s%n",
+                "Stage", "Calls", "Bytes in", "Bytes out", "Out/in", "Time, ms", "Max call, us"));
+        for (StageMetrics stage : metrics) {
+            report.append(String.format("%-45s %10d %14d %14d %8.3f %12.3f %14.3f%n",
+                    stage.getStageName(), stage.getConsumeCalls(), stage.getBytesIn(), stage.getBytesOut(),
+                    stage.getCompressionRatio(), stage.getTotalTimeMillis(), stage.getMaxCallMicros()));
+        }
+        // the logger prints the table to the console as well
+        Logger logger = getLogger();
+        if (logger != null)
+            logger.info(report.toString());
+        else
+            System.out.print(report);
+    }
+
     public RC runPipeline() {
-        RC rc = reader.run();
+        if (batch != null)
+            return batch.run();
+
+        ArrayList<ObjectName> metricsNames = isMetered ? registerMetrics() : null;
+        long start = System.nanoTime();
+        RC rc = isParallel || tee != null ? runLinked() : reader.run();
+        if (isMetered) {
+            long time = System.nanoTime() - start;
+            metrics.get(0).addCall(time);
+            metrics.get(0).addOwnTimeOfCall(time - metrics.get(0).nestedNanos);
+            int writerIndex = 0;
+            for (Branch branch : branches) {
+                writerIndex += branch.executors.size() + 1;
+                try {
+                    metrics.get(writerIndex).bytesOut.add(branch.fout.getChannel().position());
+                } catch (IOException ignored) {}
+            }
+            reportMetrics();
+            unregisterMetrics(metricsNames);
+        }
+        closeStreams();
+        // the checkpoint is kept only for a failed pipeline
+        if (rc.isSuccess() && checkpointFile != null) {
+            try {
+                Files.deleteIfExists(Paths.get(checkpointFile));
+            } catch (IOException e) {
+                handleError(new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Could not delete checkpoint"));
+            }
+        }
+        return rc;
+    }
+
+    void closeStreams() {
         try {
-            fin.close();
-            fout.close();
+            if (fin != null)
+                fin.close();
+            for (Branch branch : branches) {
+                if (branch.fout != null)
+                    branch.fout.close();
+            }
         } catch (IOException e) {
            handleError(new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Could not close files"));
         }
-        return rc;
+        if (reservedMemory != 0) {
+            memoryBudget.release(reservedMemory);
+            reservedMemory = 0;
+        }
     }
 
     static public void handleError(RC rc) {
         String errMsg = "Error in " + rc.who + ": " + rc.info;
         System.out.println(errMsg);
+        Logger logger = getLogger();
         if (logger != null)
             logger.severe(errMsg);
         else
@@ -192,12 +897,33 @@ public class Manager implements IConfigurable {
     }
 
     public static void main(String[] args) {
-        if (args.length != 1) {
-            handleError(RC.RC_MANAGER_INVALID_ARGUMENT);
+        if (args.length >= 2 && args[0].equals(PipelineServer.SERVER_OPTION)) {
+            PipelineServer.main(args);
             return;
         }
         Manager manager = new Manager();
-        RC rc = manager.setConfig(args[0]);
+        String configFile = args.length > 0 ? args[args.length - 1] : null;
+        if (args.length == 2 && args[0].equals(RESUME_OPTION))
+            manager.isResumed = true;
+        else if (args.length == 4 && args[0].equals(RANGE_OPTION)) {
+            // --range CONFIG FROM LENGTH
+            configFile = args[1];
+            try {
+                manager.rangeFrom = Long.parseLong(args[2]);
+                manager.rangeLength = Long.parseLong(args[3]);
+            } catch (NumberFormatException e) {
+                manager.rangeLength = 0;
+            }
+            if (manager.rangeFrom < 0 || manager.rangeLength <= 0) {
+                handleError(RC.RC_MANAGER_INVALID_ARGUMENT);
+                return;
+            }
+        }
+        else if (args.length != 1) {
+            handleError(RC.RC_MANAGER_INVALID_ARGUMENT);
+            return;
+        }
+        RC rc = manager.setConfig(configFile);
         if (!rc.isSuccess()) {
             handleError(rc);
             return;
@@ -0,0 +1,60 @@
+package com.pipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+// Sends a job to the PipelineServer on this machine and waits for its result:
+// ManagerClient PORT CONFIG_FILE [INPUT_FILE OUTPUT_FILE]
+public class ManagerClient {
+    private static String absolutePath(String path) {
+        return path.isEmpty() ? path : new File(path).getAbsolutePath();
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: ManagerClient PORT CONFIG_FILE [INPUT_FILE OUTPUT_FILE]");
+            System.exit(2);
+        }
+
+        int port;
+        try {
+            port = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid port " + args[0]);
+            System.exit(2);
+            return;
+        }
+
+        // the server has its own working directory
+        String configFile = absolutePath(args[1]);
+        String inputFile = args.length == 4 ? absolutePath(args[2]) : "";
+        String outputFile = args.length == 4 ? absolutePath(args[3]) : "";
+
+        boolean isSuccess;
+        String message;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(configFile);
+            out.writeUTF(inputFile);
+            out.writeUTF(outputFile);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            isSuccess = in.readBoolean();
+            message = in.readUTF();
+        } catch (IOException e) {
+            isSuccess = false;
+            message = "Could not talk to the server on port " + port + ": " + e;
+        }
+
+        System.out.println(message);
+        if (!isSuccess)
+            System.exit(1);
+    }
+}
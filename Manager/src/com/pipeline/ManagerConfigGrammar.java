@@ -10,10 +10,41 @@ public class ManagerConfigGrammar implements IConfigGrammar {
         READER_CONFIG ("READER_CONFIG"),
         EXECUTORS_CONFIGS ("EXECUTORS_CONFIGS"),
         WRITER_CONFIG ("WRITER_CONFIG"),
-        LOG_FILE ("LOG_FILE");
+        LOG_FILE ("LOG_FILE"),
+        PIPELINE_MODE ("PIPELINE_MODE", false),
+        QUEUE_SIZE ("QUEUE_SIZE", false),
+        BUFFER_MEMORY ("BUFFER_MEMORY", false),
+        METRICS ("METRICS", false),
+        BATCH_WORKERS ("BATCH_WORKERS", false),
+        CHECKPOINT_INTERVAL ("CHECKPOINT_INTERVAL", false),
+        APPEND ("APPEND", false);
 
         private final String str;
+        private final boolean isRequired;
         ConfigParams(String str) {
+            this(str, true);
+        }
+
+        ConfigParams(String str, boolean isRequired) {
+            this.str = str;
+            this.isRequired = isRequired;
+        }
+
+        public String toStr() {
+            return str;
+        }
+
+        public boolean isRequired() {
+            return isRequired;
+        }
+    }
+
+    public enum PipelineMode {
+        SEQUENTIAL ("SEQUENTIAL"),
+        PARALLEL ("PARALLEL");
+
+        private final String str;
+        PipelineMode(String str) {
             this.str = str;
         }
 
@@ -0,0 +1,41 @@
+package com.pipeline;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Memory for the buffers of the pipelines run by PipelineJobs.
+// A pipeline takes its part before it opens its files and gives it back when it is closed,
+// so new pipelines wait while the running ones hold the memory. A pipeline which needs more
+// than the whole budget runs only when nothing else does.
+// Waiting goes through a lock, not a monitor, so a waiting virtual thread does not pin its carrier.
+class MemoryBudget {
+    private final long capacity;
+    private long used = 0;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    MemoryBudget(long capacity) {
+        this.capacity = capacity;
+    }
+
+    void acquire(long bytes) throws InterruptedException {
+        lock.lock();
+        try {
+            while (used > 0 && used + bytes > capacity)
+                released.await();
+            used += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long bytes) {
+        lock.lock();
+        try {
+            used -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.nio.ByteBuffer;
+
+// Stands right before a consumer stage and counts its calls, time and the data it takes.
+// The data taken by the consumer is also the output of the provider stage.
+class MeteringLink implements IConsumer, IProvider {
+    // null if the output of the provider is counted elsewhere, the tee counts the reader once for all branches
+    private final StageMetrics providerMetrics;
+    private final StageMetrics consumerMetrics;
+    // in the sequential mode calls of the consumer are nested in the calls of the provider
+    private final boolean isNested;
+    private IProvider provider;
+    private IConsumer consumer;
+
+    MeteringLink(StageMetrics providerMetrics, StageMetrics consumerMetrics, boolean isNested) {
+        this.providerMetrics = providerMetrics;
+        this.consumerMetrics = consumerMetrics;
+        this.isNested = isNested;
+    }
+
+    static long sizeOf(Object data) {
+        if (data instanceof byte[])
+            return ((byte[]) data).length;
+        if (data instanceof char[])
+            return (long) ((char[]) data).length * Character.BYTES;
+        if (data instanceof int[])
+            return (long) ((int[]) data).length * Integer.BYTES;
+        return 0;
+    }
+
+    private void countData(long size) {
+        consumerMetrics.bytesIn.add(size);
+        if (providerMetrics != null)
+            providerMetrics.bytesOut.add(size);
+    }
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        provider = iProvider;
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setConsumer(IConsumer iConsumer) {
+        consumer = iConsumer;
+        return iConsumer.setProvider(this);
+    }
+
+    @Override
+    public TYPE[] getOutputTypes() {
+        return provider.getOutputTypes();
+    }
+
+    @Override
+    public IMediator getMediator(TYPE type) {
+        IMediator mediator = provider.getMediator(type);
+        if (mediator == null)
+            return null;
+
+        if (mediator instanceof ILeasingMediator) {
+            ILeasingMediator leasingMediator = (ILeasingMediator) mediator;
+            class MeteredLeasingMediator implements ILeasingMediator, IBufferMediator {
+                @Override
+                public Object getData() {
+                    Object data = leasingMediator.getData();
+                    countData(sizeOf(data));
+                    return data;
+                }
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    ByteBuffer block;
+                    if (leasingMediator instanceof IBufferMediator)
+                        block = ((IBufferMediator) leasingMediator).getBuffer();
+                    else {
+                        byte[] data = (byte[]) leasingMediator.getData();
+                        block = data != null ? ByteBuffer.wrap(data).asReadOnlyBuffer() : null;
+                    }
+                    if (block != null)
+                        countData(block.remaining());
+                    return block;
+                }
+
+                @Override
+                public ByteSlice lease() {
+                    ByteSlice slice = leasingMediator.lease();
+                    if (slice != null)
+                        countData(slice.length);
+                    return slice;
+                }
+            }
+            return new MeteredLeasingMediator();
+        }
+
+        if (mediator instanceof IBufferMediator) {
+            IBufferMediator bufferMediator = (IBufferMediator) mediator;
+            class MeteredBufferMediator implements IBufferMediator {
+                @Override
+                public Object getData() {
+                    Object data = bufferMediator.getData();
+                    countData(sizeOf(data));
+                    return data;
+                }
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    ByteBuffer block = bufferMediator.getBuffer();
+                    if (block != null)
+                        countData(block.remaining());
+                    return block;
+                }
+            }
+            return new MeteredBufferMediator();
+        }
+
+        class MeteredMediator implements IMediator {
+            @Override
+            public Object getData() {
+                Object data = mediator.getData();
+                countData(sizeOf(data));
+                return data;
+            }
+        }
+        return new MeteredMediator();
+    }
+
+    @Override
+    public RC consume() {
+        long nestedBefore = consumerMetrics.nestedNanos;
+        long start = System.nanoTime();
+        RC rc = consumer.consume();
+        long time = System.nanoTime() - start;
+        consumerMetrics.addCall(time);
+        consumerMetrics.addOwnTimeOfCall(time - (consumerMetrics.nestedNanos - nestedBefore));
+        if (isNested)
+            providerMetrics.nestedNanos = providerMetrics.nestedNanos + time;
+        return rc;
+    }
+}
@@ -0,0 +1,111 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.RC;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs many pipelines at once inside one JVM:
+//     PipelineJobs jobs = new PipelineJobs(256 * 1024 * 1024);
+//     Future<RC> result = jobs.submit(configFile, inputFile, outputFile);
+// Every job runs in its own thread, a virtual one when the JVM has them (Java 21+), so jobs blocked
+// on reading and writing do not hold platform threads; on older JVMs jobs share a pool of platform threads.
+// Buffers of the running jobs are limited by the memory budget: a job takes its part of the budget
+// (buffer sizes of its stages) before it opens its files and gives it back when it is finished,
+// so new jobs wait while the budget is used instead of filling the heap. Stages take their buffers
+// from the shared BufferPools, so the next jobs reuse the buffers of the finished ones.
+// Jobs run best in the sequential pipeline mode, the parallel mode starts platform threads for the stages.
+// Parsed manager configs and found stages are cached until the config file is changed.
+public class PipelineJobs {
+    private static final int PLATFORM_THREADS_PER_PROCESSOR = 4;
+
+    private static class ParsedConfig {
+        final long modified;
+        final ConfigReader configReader;
+        final Manager template;
+        final RC rc;
+
+        ParsedConfig(long modified, ConfigReader configReader, Manager template, RC rc) {
+            this.modified = modified;
+            this.configReader = configReader;
+            this.template = template;
+            this.rc = rc;
+        }
+    }
+
+    private final ConcurrentHashMap<String, ParsedConfig> configs = new ConcurrentHashMap<>();
+    // null if the memory is not limited
+    private final MemoryBudget budget;
+    private ExecutorService threads;
+
+    public PipelineJobs(long memoryBudget) {
+        this(new MemoryBudget(memoryBudget));
+    }
+
+    PipelineJobs(MemoryBudget budget) {
+        this.budget = budget;
+    }
+
+    private static ExecutorService newThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadsCount = new AtomicInteger();
+            return Executors.newFixedThreadPool(
+                    PLATFORM_THREADS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors(),
+                    r -> new Thread(r, "pipeline-job-" + threadsCount.incrementAndGet()));
+        }
+    }
+
+    private ParsedConfig parseConfig(String configFile) {
+        long modified = new File(configFile).lastModified();
+        ParsedConfig config = configs.get(configFile);
+        if (config != null && config.modified == modified)
+            return config;
+
+        ConfigReader configReader = new ConfigReader(RC.RCWho.MANAGER, new ManagerConfigGrammar());
+        Manager template = new Manager();
+        template.memoryBudget = budget;
+        RC rc = configReader.read(configFile);
+        if (rc.isSuccess())
+            rc = template.setManagerConfig(configReader);
+        config = new ParsedConfig(modified, configReader, template, rc);
+        if (rc.isSuccess())
+            configs.put(configFile, config);
+        return config;
+    }
+
+    // runs the job in the calling thread, empty (or null) files are taken from the config
+    RC run(String configFile, String inputFile, String outputFile) {
+        ParsedConfig config = parseConfig(configFile);
+        if (!config.rc.isSuccess())
+            return config.rc;
+
+        if (inputFile == null || inputFile.isEmpty())
+            inputFile = config.configReader.getParam(ManagerConfigGrammar.ConfigParams.INPUT_FILE.toStr());
+        if (outputFile == null || outputFile.isEmpty())
+            outputFile = config.configReader.getParam(ManagerConfigGrammar.ConfigParams.OUTPUT_FILE.toStr());
+        return Manager.runWithTemplate(config.template, config.configReader, inputFile, outputFile);
+    }
+
+    public synchronized Future<RC> submit(String configFile, String inputFile, String outputFile) {
+        if (threads == null)
+            threads = newThreads();
+        return threads.submit(() -> run(configFile, inputFile, outputFile));
+    }
+
+    // no new jobs are accepted, the submitted ones are finished
+    public synchronized void shutdown() {
+        if (threads != null)
+            threads.shutdown();
+    }
+
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads == null || threads.awaitTermination(timeout, unit);
+    }
+}
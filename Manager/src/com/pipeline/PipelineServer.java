@@ -0,0 +1,119 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.RC;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Long-running server which runs pipeline jobs sent by ManagerClient, so the jobs do not pay
+// for the start of the JVM and run on already compiled code.
+// Started as: Manager --server PORT [WORKERS [QUEUE_SIZE]], listens on the loopback interface only.
+// A job is a manager config and optionally input and output files which replace INPUT_FILE and OUTPUT_FILE,
+// relative paths inside the configs are resolved against the working directory of the server.
+// Parsed manager configs and found classes of the workers are cached until the config file is changed.
+// At most WORKERS jobs run at once and at most QUEUE_SIZE jobs wait for a worker, the rest are rejected.
+//
+// Protocol: the client sends config, input and output paths (writeUTF, empty if not given),
+// the server answers with success flag (writeBoolean) and message (writeUTF).
+class PipelineServer {
+    static final String SERVER_OPTION = "--server";
+    static final String SUCCESS_MESSAGE = "Success!";
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    // runs the jobs in the threads of the pool and keeps the parsed configs
+    private final PipelineJobs jobs = new PipelineJobs((MemoryBudget) null);
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor pool;
+
+    PipelineServer(int port, int workersCount, int queueSize) throws IOException {
+        serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        AtomicInteger threadsCount = new AtomicInteger();
+        pool = new ThreadPoolExecutor(workersCount, workersCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> new Thread(r, "server-worker-" + threadsCount.incrementAndGet()));
+    }
+
+    private static void reply(Socket socket, RC rc) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeBoolean(rc.isSuccess());
+        out.writeUTF(rc.isSuccess() ? SUCCESS_MESSAGE : "Error in " + rc.who + ": " + rc.info);
+        out.flush();
+    }
+
+    private void handle(Socket socket) {
+        try (Socket client = socket) {
+            client.setSoTimeout(READ_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+            String configFile = in.readUTF();
+            String inputFile = in.readUTF();
+            String outputFile = in.readUTF();
+
+            RC rc = jobs.run(configFile, inputFile, outputFile);
+            if (!rc.isSuccess())
+                Manager.handleError(rc);
+            reply(client, rc);
+        } catch (IOException e) {
+            Manager.handleError(new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Lost connection with client: " + e));
+        }
+    }
+
+    void serve() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                Manager.handleError(new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Could not accept client: " + e));
+                continue;
+            }
+
+            try {
+                pool.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                try (Socket client = socket) {
+                    reply(client, new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Server is busy, try later"));
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    static void main(String[] args) {
+        int port;
+        int workersCount = Runtime.getRuntime().availableProcessors();
+        int queueSize;
+        try {
+            port = Integer.parseInt(args[1]);
+            if (args.length > 2)
+                workersCount = Integer.parseInt(args[2]);
+            queueSize = args.length > 3 ? Integer.parseInt(args[3]) : 4 * workersCount;
+        } catch (NumberFormatException e) {
+            Manager.handleError(RC.RC_MANAGER_INVALID_ARGUMENT);
+            return;
+        }
+        if (args.length > 4 || port < 0 || workersCount <= 0 || queueSize <= 0) {
+            Manager.handleError(RC.RC_MANAGER_INVALID_ARGUMENT);
+            return;
+        }
+
+        PipelineServer server;
+        try {
+            server = new PipelineServer(port, workersCount, queueSize);
+        } catch (IOException e) {
+            Manager.handleError(new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Could not listen on port " + port));
+            return;
+        }
+        System.out.println("Listening on port " + server.serverSocket.getLocalPort());
+        server.serve();
+    }
+}
@@ -0,0 +1,80 @@
+package com.pipeline;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Streams for decoding of a range of an indexed file: the reader sees only the frames
+// which cover the range and the writer lets through only the bytes of the range.
+class RangeStreams {
+    // no more than limit bytes of the stream
+    static class Input extends FilterInputStream {
+        private long rest;
+
+        Input(InputStream in, long limit) {
+            super(in);
+            rest = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (rest == 0)
+                return -1;
+            int b = in.read();
+            if (b >= 0)
+                --rest;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (rest == 0)
+                return -1;
+            int count = in.read(b, off, (int) Long.min(len, rest));
+            if (count > 0)
+                rest -= count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Long.min(n, rest));
+            rest -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Long.min(in.available(), rest);
+        }
+    }
+
+    // skips the first skip bytes, then passes length bytes and drops the rest
+    static class Output extends FilterOutputStream {
+        private long skip;
+        private long rest;
+
+        Output(OutputStream out, long skip, long length) {
+            super(out);
+            this.skip = skip;
+            rest = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int skipped = (int) Long.min(len, skip);
+            skip -= skipped;
+            int count = (int) Long.min(len - skipped, rest);
+            if (count > 0)
+                out.write(b, off + skipped, count);
+            rest -= count;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Connects two neighbouring stages of the pipeline through a bounded queue.
+// For the upstream stage the link is an ordinary consumer: consume() takes the block
+// from the upstream mediator and puts it into the queue (blocking while the queue is full).
+// The downstream stage is fed by its own worker thread and sees the link as an ordinary provider.
+class StageLink implements IConsumer, IProvider {
+    private static final Object END_OF_STREAM = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private IProvider provider;
+    private IMediator providerMediator;
+    private ILeasingMediator leasingProviderMediator;
+    private IConsumer consumer;
+    // type of the blocks asked by the downstream stage
+    private TYPE type;
+    private Thread worker;
+    // block which is passed to the downstream stage at the moment, touched only by the worker
+    private Object current;
+    private boolean isCurrentLent;
+    private volatile RC failure = RC.RC_SUCCESS;
+    private boolean isClosed = false;
+
+    StageLink(int queueSize) {
+        queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        provider = iProvider;
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setConsumer(IConsumer iConsumer) {
+        consumer = iConsumer;
+        return iConsumer.setProvider(this);
+    }
+
+    @Override
+    public TYPE[] getOutputTypes() {
+        return provider.getOutputTypes();
+    }
+
+    @Override
+    public IMediator getMediator(TYPE type) {
+        this.type = type;
+        providerMediator = provider.getMediator(type);
+        if (providerMediator == null)
+            return null;
+
+        if (provider instanceof TeeLink) {
+            // blocks are shared with the other branches, so they are shown read-only or copied
+            if (type == TYPE.BYTE_ARRAY) {
+                class QueuedSharedByteArrayMediator implements IBufferMediator {
+                    @Override
+                    public Object getData() {
+                        return current != null ? ((TeeLink.SharedBlock) current).copy() : null;
+                    }
+
+                    @Override
+                    public ByteBuffer getBuffer() {
+                        return current != null ? ((TeeLink.SharedBlock) current).view() : null;
+                    }
+                }
+                return new QueuedSharedByteArrayMediator();
+            }
+
+            class QueuedSharedMediator implements IMediator {
+                @Override
+                public Object getData() {
+                    return current != null ? ((TeeLink.SharedBlock) current).copy() : null;
+                }
+            }
+            return new QueuedSharedMediator();
+        }
+
+        if (providerMediator instanceof ILeasingMediator) {
+            leasingProviderMediator = (ILeasingMediator) providerMediator;
+            // slices are passed through the queue as they are, the downstream stage
+            // either takes over the slice or gets a copy of it
+            class QueuedLeasingMediator implements ILeasingMediator, IBufferMediator {
+                @Override
+                public Object getData() {
+                    ByteSlice slice = (ByteSlice) current;
+                    return slice != null ? Arrays.copyOf(slice.array, slice.length) : null;
+                }
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    ByteSlice slice = (ByteSlice) current;
+                    return slice != null ? ByteBuffer.wrap(slice.array, 0, slice.length).asReadOnlyBuffer() : null;
+                }
+
+                @Override
+                public ByteSlice lease() {
+                    isCurrentLent = current != null;
+                    return (ByteSlice) current;
+                }
+            }
+            return new QueuedLeasingMediator();
+        }
+
+        if (type == TYPE.BYTE_ARRAY) {
+            // the queued array is owned by the link, so it can be shown in place
+            class QueuedByteArrayMediator implements IBufferMediator {
+                @Override
+                public Object getData() {
+                    return current;
+                }
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    return current != null ? ByteBuffer.wrap((byte[]) current).asReadOnlyBuffer() : null;
+                }
+            }
+            return new QueuedByteArrayMediator();
+        }
+
+        class QueuedMediator implements IMediator {
+            @Override
+            public Object getData() {
+                return current;
+            }
+        }
+        return new QueuedMediator();
+    }
+
+    TYPE getType() {
+        return type;
+    }
+
+    void start() {
+        worker = new Thread(this::work, "pipeline-" + consumer.getClass().getSimpleName());
+        worker.start();
+    }
+
+    private void work() {
+        while (true) {
+            Object block;
+            try {
+                block = queue.take();
+            } catch (InterruptedException e) {
+                failure = new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Pipeline stage was interrupted");
+                return;
+            }
+
+            boolean isEnd = block == END_OF_STREAM;
+            // after an error the rest of the data is dropped, but the end of stream is still
+            // delivered so the stages can finish the same way as in the sequential mode
+            if (isEnd || failure.isSuccess()) {
+                current = isEnd ? null : block;
+                isCurrentLent = false;
+                RC rc;
+                try {
+                    rc = consumer.consume();
+                } catch (RuntimeException e) {
+                    rc = new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR,
+                            "Pipeline stage " + consumer.getClass().getName() + " failed: " + e);
+                }
+                current = null;
+                if (isCurrentLent)
+                    block = null;
+                if (!rc.isSuccess() && failure.isSuccess())
+                    failure = rc;
+            }
+            if (block instanceof ByteSlice)
+                ((ByteSlice) block).release();
+            else if (block instanceof TeeLink.SharedBlock)
+                ((TeeLink.SharedBlock) block).release();
+            if (isEnd)
+                return;
+        }
+    }
+
+    @Override
+    public RC consume() {
+        if (isClosed)
+            return failure;
+
+        // providers either hand out a copy of their buffer or lend it to us,
+        // so the block stays valid after we return
+        Object block = leasingProviderMediator != null ? leasingProviderMediator.lease() : providerMediator.getData();
+        if (block == null)
+            return close();
+        return put(block);
+    }
+
+    // puts a block which now belongs to the link, the tee puts shared blocks of the branches this way
+    RC put(Object block) {
+        try {
+            queue.put(block);
+        } catch (InterruptedException e) {
+            return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Pipeline stage was interrupted");
+        }
+        return failure;
+    }
+
+    // passes the end of stream downstream (if the provider has not done it yet)
+    // and waits until the downstream stage processes everything
+    RC close() {
+        if (!isClosed) {
+            isClosed = true;
+            try {
+                queue.put(END_OF_STREAM);
+                worker.join();
+            } catch (InterruptedException e) {
+                return new RC(RC.RCWho.MANAGER, RC.RCType.CODE_CUSTOM_ERROR, "Pipeline stage was interrupted");
+            }
+        }
+        return failure;
+    }
+}
@@ -0,0 +1,68 @@
+package com.pipeline;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters of one stage of the pipeline. Calls and times have a single writer thread
+// (the thread which runs the stage or its consumer), so plain volatile fields are enough for them.
+// Data is counted by the consumers and the tee, which may run in other threads, so it is added up.
+public class StageMetrics implements StageMetricsMBean {
+    private final String stageName;
+    volatile long consumeCalls = 0;
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    volatile long totalNanos = 0;
+    // time spent in the calls of the next stage, which are made from the calls of this one
+    volatile long nestedNanos = 0;
+    volatile long maxCallNanos = 0;
+
+    StageMetrics(String stageName) {
+        this.stageName = stageName;
+    }
+
+    void addCall(long nanos) {
+        consumeCalls = consumeCalls + 1;
+        totalNanos = totalNanos + nanos;
+    }
+
+    void addOwnTimeOfCall(long nanos) {
+        if (nanos > maxCallNanos)
+            maxCallNanos = nanos;
+    }
+
+    @Override
+    public String getStageName() {
+        return stageName;
+    }
+
+    @Override
+    public long getConsumeCalls() {
+        return consumeCalls;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long in = getBytesIn();
+        return in > 0 ? (double) getBytesOut() / in : 0;
+    }
+
+    // own time of the stage, without the time of the next stages
+    @Override
+    public double getTotalTimeMillis() {
+        return (totalNanos - nestedNanos) / 1e6;
+    }
+
+    @Override
+    public double getMaxCallMicros() {
+        return maxCallNanos / 1e3;
+    }
+}
@@ -0,0 +1,11 @@
+package com.pipeline;
+
+public interface StageMetricsMBean {
+    String getStageName();
+    long getConsumeCalls();
+    long getBytesIn();
+    long getBytesOut();
+    double getCompressionRatio();
+    double getTotalTimeMillis();
+    double getMaxCallMicros();
+}
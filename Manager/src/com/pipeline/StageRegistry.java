@@ -0,0 +1,70 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IExecutor;
+import com.java_polytech.pipeline_interfaces.IReader;
+import com.java_polytech.pipeline_interfaces.IWriter;
+
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.function.Supplier;
+
+// Stages of the modules on the class path which have an IStageFactory, found once with ServiceLoader,
+// so known stages are created without reflection. Other stages (like ones from third-party jars)
+// are still found by the names of their classes.
+class StageRegistry {
+    private static final Map<String, Supplier<IReader>> readers = new HashMap<>();
+    private static final Map<String, Supplier<IExecutor>> executors = new HashMap<>();
+    private static final Map<String, Supplier<IWriter>> writers = new HashMap<>();
+
+    static {
+        try {
+            for (IStageFactory factory : ServiceLoader.load(IStageFactory.class)) {
+                readers.putAll(factory.getReaders());
+                executors.putAll(factory.getExecutors());
+                writers.putAll(factory.getWriters());
+            }
+        } catch (ServiceConfigurationError ignored) {
+            // the rest of the stages are found by the names of their classes
+        }
+    }
+
+    // returns null if there is no such stage of this type
+    static Supplier<IReader> findReader(String className) {
+        return find(readers, className, IReader.class);
+    }
+
+    static Supplier<IExecutor> findExecutor(String className) {
+        return find(executors, className, IExecutor.class);
+    }
+
+    static Supplier<IWriter> findWriter(String className) {
+        return find(writers, className, IWriter.class);
+    }
+
+    private static <T> Supplier<T> find(Map<String, Supplier<T>> known, String className, Class<T> type) {
+        Supplier<T> stage = known.get(className);
+        if (stage != null)
+            return stage;
+
+        Constructor<?> constructor;
+        try {
+            Class<?> stageClass = Class.forName(className);
+            if (!type.isAssignableFrom(stageClass))
+                return null;
+            constructor = stageClass.getDeclaredConstructor();
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+        // null if the stage could not be created
+        return () -> {
+            try {
+                return type.cast(constructor.newInstance());
+            } catch (Exception e) {
+                return null;
+            }
+        };
+    }
+}
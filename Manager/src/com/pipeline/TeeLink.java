@@ -0,0 +1,160 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Feeds all branches of a fan-out pipeline from one provider (the reader).
+// Every block is taken from the provider once and shared read-only by the branches.
+// Each branch gets the block through its own StageLink, so the branches run concurrently
+// and the reader waits only for a branch whose queue is full.
+class TeeLink implements IConsumer, IProvider {
+    // block which is shared by the branches, a leased slice goes back to its pool
+    // when the last branch is done with it
+    static class SharedBlock {
+        private final Object data;
+        private final AtomicInteger users;
+
+        SharedBlock(Object data, int users) {
+            this.data = data;
+            this.users = new AtomicInteger(users);
+        }
+
+        // copy for a consumer which asks for an array it may change
+        Object copy() {
+            if (data instanceof ByteSlice)
+                return Arrays.copyOf(((ByteSlice) data).array, ((ByteSlice) data).length);
+            if (data instanceof byte[])
+                return ((byte[]) data).clone();
+            if (data instanceof char[])
+                return ((char[]) data).clone();
+            if (data instanceof int[])
+                return ((int[]) data).clone();
+            return null;
+        }
+
+        long size() {
+            return data instanceof ByteSlice ? ((ByteSlice) data).length : MeteringLink.sizeOf(data);
+        }
+
+        ByteBuffer view() {
+            ByteBuffer block = data instanceof ByteSlice ?
+                    ByteBuffer.wrap(((ByteSlice) data).array, 0, ((ByteSlice) data).length) :
+                    ByteBuffer.wrap((byte[]) data);
+            return block.asReadOnlyBuffer();
+        }
+
+        void release() {
+            if (users.decrementAndGet() == 0 && data instanceof ByteSlice)
+                ((ByteSlice) data).release();
+        }
+
+        // the block was not put to any branch
+        void discard() {
+            if (data instanceof ByteSlice)
+                ((ByteSlice) data).release();
+        }
+    }
+
+    private IProvider provider;
+    // metrics of the provider if they are on, its output is counted here once and not by every branch
+    private final StageMetrics providerMetrics;
+    // mediator of the provider for every type asked by the branches
+    private final HashMap<TYPE, IMediator> mediators = new HashMap<>();
+    private final ArrayList<StageLink> branches = new ArrayList<>();
+    private final HashMap<TYPE, Integer> branchesOfType = new HashMap<>();
+    private boolean isClosed = false;
+
+    TeeLink(StageMetrics providerMetrics) {
+        this.providerMetrics = providerMetrics;
+    }
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        provider = iProvider;
+        return RC.RC_SUCCESS;
+    }
+
+    // adds a branch, every branch starts with its own StageLink
+    @Override
+    public RC setConsumer(IConsumer iConsumer) {
+        if (!(iConsumer instanceof StageLink))
+            return RC.RC_MANAGER_CONFIG_SEMANTIC_ERROR;
+        branches.add((StageLink) iConsumer);
+        return iConsumer.setProvider(this);
+    }
+
+    @Override
+    public TYPE[] getOutputTypes() {
+        return provider.getOutputTypes();
+    }
+
+    @Override
+    public IMediator getMediator(TYPE type) {
+        IMediator mediator = mediators.get(type);
+        if (mediator == null) {
+            mediator = provider.getMediator(type);
+            if (mediator == null)
+                return null;
+            mediators.put(type, mediator);
+        }
+        branchesOfType.merge(type, 1, Integer::sum);
+        return mediator;
+    }
+
+    @Override
+    public RC consume() {
+        if (isClosed)
+            return RC.RC_SUCCESS;
+
+        // providers either hand out a copy of their buffer or lend it to us,
+        // so the block stays valid until all branches are done with it.
+        // Lending replaces the buffer of the provider, so the copies of other types are taken first
+        HashMap<TYPE, SharedBlock> blocks = new HashMap<>();
+        for (boolean isLeased : new boolean[] { false, true }) {
+            for (TYPE type : mediators.keySet()) {
+                IMediator mediator = mediators.get(type);
+                if ((mediator instanceof ILeasingMediator) != isLeased)
+                    continue;
+                Object data = isLeased ? ((ILeasingMediator) mediator).lease() : mediator.getData();
+                if (data == null) {
+                    for (SharedBlock block : blocks.values())
+                        block.discard();
+                    return close();
+                }
+                blocks.put(type, new SharedBlock(data, branchesOfType.get(type)));
+            }
+        }
+        // blocks of all types hold the same bytes of the provider
+        if (providerMetrics != null && !blocks.isEmpty())
+            providerMetrics.bytesOut.add(blocks.values().iterator().next().size());
+
+        // a failed branch stops the whole pipeline, but the block is still put to every branch
+        // because each of them releases it
+        RC rc = RC.RC_SUCCESS;
+        for (StageLink branch : branches) {
+            RC branchRc = branch.put(blocks.get(branch.getType()));
+            if (rc.isSuccess())
+                rc = branchRc;
+        }
+        return rc;
+    }
+
+    // passes the end of stream to all branches and waits until they write everything
+    RC close() {
+        RC rc = RC.RC_SUCCESS;
+        if (!isClosed) {
+            isClosed = true;
+            for (StageLink branch : branches) {
+                RC branchRc = branch.close();
+                if (rc.isSuccess())
+                    rc = branchRc;
+            }
+        }
+        return rc;
+    }
+}
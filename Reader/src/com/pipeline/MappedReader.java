@@ -0,0 +1,241 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Reader which maps the input file into memory instead of reading it through the stream.
+// The file is mapped by chunks of MAP_SIZE bytes (so files larger than 2 GB are supported)
+// and consumers get it by windows of BUFFER_SIZE bytes.
+public class MappedReader implements IReader, IAutoBuffer, ICheckpointable {
+    private static final int DEFAULT_MAP_SIZE = 64 * 1024 * 1024;
+
+    FileChannel channel;
+    IConsumer consumer;
+    private BufferPool pool;
+    private int bufferSize;
+    private boolean isBufferSizeAuto = false;
+    // MAP_SIZE from the config, mapSize is rounded to a multiple of the buffer size
+    private long configuredMapSize;
+    private long mapSize;
+    final private TYPE[] supportedTypes = { TYPE.BYTE_ARRAY, TYPE.CHAR_ARRAY, TYPE.INT_ARRAY };
+    // current mapped chunk starts at chunkStart of the file,
+    // the window to pass starts at windowStart of the chunk and has sizeOfData bytes
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private int windowStart;
+    private int sizeOfData;
+
+    @Override
+    public RC setInputStream(InputStream inputStream) {
+        if (!(inputStream instanceof FileInputStream))
+            return new RC(RC.RCWho.READER, RC.RCType.CODE_INVALID_INPUT_FILE, "Only files can be mapped");
+        channel = ((FileInputStream) inputStream).getChannel();
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC run() {
+        try {
+            chunkStart = channel.position();
+            long fileSize = channel.size();
+            while (chunkStart < fileSize) {
+                long mapLength = Long.min(mapSize, fileSize - chunkStart);
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, mapLength);
+                for (windowStart = 0; windowStart < mapLength; windowStart += sizeOfData) {
+                    sizeOfData = (int) Long.min(bufferSize, mapLength - windowStart);
+                    RC rc = consumer.consume();
+                    if (!rc.isSuccess()) {
+                        sizeOfData = 0;
+                        consumer.consume();
+                        return rc;
+                    }
+                }
+                chunkStart += mapLength;
+                // consumers do not keep the windows after consume(), so the chunk is unmapped
+                // right away instead of when GC finds it
+                unmapChunk();
+            }
+        } catch (IOException e) {
+            return RC.RC_READER_FAILED_TO_READ;
+        } finally {
+            unmapChunk();
+        }
+
+        sizeOfData = 0;
+        windowStart = 0;
+        return consumer.consume();
+    }
+
+    private void unmapChunk() {
+        DirectBufferPool.free(chunk);
+        chunk = null;
+    }
+
+    @Override
+    public RC saveState(DataOutput state) {
+        try {
+            state.writeLong(chunkStart + windowStart + sizeOfData);
+        } catch (IOException e) {
+            return RC.RC_READER_FAILED_TO_READ;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    // mapping starts from the position of the channel
+    @Override
+    public RC restoreState(DataInput state) {
+        try {
+            long position = state.readLong();
+            if (position > channel.size())
+                return new RC(RC.RCWho.READER, RC.RCType.CODE_CUSTOM_ERROR, "Input is shorter than in the saved state");
+            channel.position(position);
+        } catch (IOException e) {
+            return RC.RC_READER_FAILED_TO_READ;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setConfig(String s) {
+        ConfigReader configReader = new ConfigReader(RC.RCWho.READER, new ReaderConfigGrammar());
+        RC rc = configReader.read(s);
+        if (!rc.isSuccess())
+            return rc;
+
+        if (!configReader.hasKey(ReaderConfigGrammar.ConfigParams.BUFFER_SIZE.toStr())) {
+            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        String sizeStr = configReader.getParam(ReaderConfigGrammar.ConfigParams.BUFFER_SIZE.toStr());
+        isBufferSizeAuto = sizeStr.equalsIgnoreCase(AUTO);
+        int size = DEFAULT_SIZE;
+        try {
+            if (!isBufferSizeAuto)
+                size = Integer.parseInt(sizeStr);
+            configuredMapSize = DEFAULT_MAP_SIZE;
+            if (configReader.hasKey(ReaderConfigGrammar.ConfigParams.MAP_SIZE.toStr()))
+                configuredMapSize = Long.parseLong(configReader.getParam(ReaderConfigGrammar.ConfigParams.MAP_SIZE.toStr()));
+        }
+        catch (NumberFormatException e) {
+            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        if (configuredMapSize <= 0 || configuredMapSize > Integer.MAX_VALUE)
+            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+
+        return setBufferSize(size);
+    }
+
+    @Override
+    public boolean isBufferSizeAuto() {
+        return isBufferSizeAuto;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public RC setBufferSize(int size) {
+        if (size <= 0)
+            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+
+        // windows must not cross the border of a chunk
+        mapSize = Long.max(configuredMapSize / size, 1) * size;
+        if (mapSize > Integer.MAX_VALUE)
+            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+
+        bufferSize = size;
+        pool = BufferPool.shared(bufferSize);
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setConsumer(IConsumer iConsumer) {
+        consumer = iConsumer;
+        return iConsumer.setProvider(this);
+    }
+
+    @Override
+    public TYPE[] getOutputTypes() {
+        return supportedTypes;
+    }
+
+    @Override
+    public IMediator getMediator(TYPE type) {
+        if (type == TYPE.BYTE_ARRAY) {
+            class ByteArrayMediator implements ILeasingMediator, IBufferMediator {
+                @Override
+                public Object getData() {
+                    if (sizeOfData == 0)
+                        return null;
+                    byte[] data = new byte[sizeOfData];
+                    chunk.position(windowStart);
+                    chunk.get(data);
+                    return data;
+                }
+
+                // the window of the mapped chunk itself, nothing is copied
+                @Override
+                public ByteBuffer getBuffer() {
+                    if (sizeOfData == 0)
+                        return null;
+                    ByteBuffer window = chunk.asReadOnlyBuffer();
+                    window.limit(windowStart + sizeOfData).position(windowStart);
+                    return window;
+                }
+
+                @Override
+                public ByteSlice lease() {
+                    if (sizeOfData == 0)
+                        return null;
+                    ByteSlice slice = pool.acquire();
+                    chunk.position(windowStart);
+                    chunk.get(slice.array, 0, sizeOfData);
+                    slice.length = sizeOfData;
+                    return slice;
+                }
+            }
+            return new ByteArrayMediator();
+        }
+        else if (type == TYPE.CHAR_ARRAY) {
+            class CharArrayMediator implements IMediator {
+                @Override
+                public Object getData() {
+                    if (sizeOfData == 0)
+                        return null;
+                    char[] data = new char[sizeOfData / Character.BYTES];
+                    chunk.position(windowStart);
+                    chunk.asCharBuffer().get(data);
+                    return data;
+                }
+            }
+            return new CharArrayMediator();
+        }
+        else if (type == TYPE.INT_ARRAY) {
+            class IntArrayMediator implements IMediator {
+                @Override
+                public Object getData() {
+                    if (sizeOfData == 0)
+                        return null;
+                    int[] data = new int[sizeOfData / Integer.BYTES];
+                    chunk.position(windowStart);
+                    chunk.asIntBuffer().get(data);
+                    return data;
+                }
+            }
+            return new IntArrayMediator();
+        }
+        else
+            return null;
+    }
+}
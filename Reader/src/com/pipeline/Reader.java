@@ -2,18 +2,49 @@ package com.pipeline;
 
 import com.java_polytech.pipeline_interfaces.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class Reader implements IReader, IAutoBuffer, ICheckpointable {
+    // with AUTO buffer size the reader starts with small blocks and doubles them while the throughput
+    // of the pipeline grows noticeably, the buffer size given by the manager is the limit
+    private static final int TUNING_START_SIZE = 16 * 1024;
+    // blocks measured at every size
+    private static final int TUNING_BLOCKS = 16;
+    private static final double TUNING_MIN_GAIN = 1.1;
+    private static final RC RC_SHORT_INPUT =
+            new RC(RC.RCWho.READER, RC.RCType.CODE_CUSTOM_ERROR, "Input is shorter than in the saved state");
 
-public class Reader implements IReader {
     InputStream input;
     IConsumer consumer;
-    private byte[] buffer;
+    // with READ_AHEAD blocks a separate thread reads up to that many blocks ahead of the consumer,
+    // so the next block is already in memory when the pipeline asks for it
+    private int readAhead = 0;
+    private BlockingQueue<ByteSlice> readBlocks;
+    private volatile boolean isReadAheadStopped;
+    private volatile RC readAheadRc;
+    private BufferPool pool;
+    private ByteSlice slice;
     private int bufferSize;
+    private boolean isBufferSizeAuto = false;
+    // bytes read at once, less than bufferSize while the block size is tuned
+    private volatile int readSize;
+    private boolean isTuning;
+    private int tuningBlocksCount;
+    private long tuningBytes;
+    private long tuningStart;
+    private double bestThroughput;
     final private TYPE[] supportedTypes = { TYPE.BYTE_ARRAY, TYPE.CHAR_ARRAY, TYPE.INT_ARRAY };
     private int sizeOfData;
+    // bytes of the input passed to the consumer
+    private long position;
 
     @Override
     public RC setInputStream(InputStream inputStream) {
@@ -23,30 +54,165 @@ public class Reader implements IReader {
 
     @Override
     public RC run() {
-        try {
-            sizeOfData = input.read(buffer, 0, bufferSize);
-        } catch (IOException e) {
-            return RC.RC_READER_FAILED_TO_READ;
+        readSize = bufferSize;
+        isTuning = isBufferSizeAuto && TUNING_START_SIZE < bufferSize;
+        if (isTuning) {
+            readSize = TUNING_START_SIZE;
+            bestThroughput = 0;
+            startTuningStep();
         }
+        if (readAhead > 0)
+            startReadAhead();
+
+        RC rc = readBlock();
+        if (!rc.isSuccess())
+            return rc;
 
         while (sizeOfData > 0) {
-            RC rc = consumer.consume();
+            position += sizeOfData;
+            rc = consumer.consume();
             if (!rc.isSuccess()) {
                 sizeOfData = 0;
                 consumer.consume();
+                stopReadAhead();
                 return rc;
             }
-            try {
-                sizeOfData = input.read(buffer, 0, bufferSize);
-            } catch (IOException e) {
-                return RC.RC_READER_FAILED_TO_READ;
-            }
+            if (isTuning)
+                tune(sizeOfData);
+            rc = readBlock();
+            if (!rc.isSuccess())
+                return rc;
         }
 
         sizeOfData = 0;
         return consumer.consume();
     }
 
+    private RC readBlock() {
+        if (readBlocks != null)
+            return takeBlock();
+        try {
+            sizeOfData = input.read(slice.array, 0, readSize);
+        } catch (IOException e) {
+            return RC.RC_READER_FAILED_TO_READ;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private void startReadAhead() {
+        readBlocks = new ArrayBlockingQueue<>(readAhead);
+        isReadAheadStopped = false;
+        readAheadRc = RC.RC_SUCCESS;
+        Thread thread = new Thread(this::readAhead, "pipeline-read-ahead");
+        // a read which never returns must not keep the process alive
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // the read-ahead thread always finishes with an empty block, the end of data
+    private void readAhead() {
+        try {
+            while (true) {
+                ByteSlice block = pool.acquire();
+                if (!isReadAheadStopped) {
+                    try {
+                        block.length = Integer.max(input.read(block.array, 0, readSize), 0);
+                    } catch (IOException e) {
+                        readAheadRc = RC.RC_READER_FAILED_TO_READ;
+                    }
+                }
+                // the block belongs to the pipeline once it is put
+                boolean isEnd = block.length == 0;
+                readBlocks.put(block);
+                if (isEnd)
+                    return;
+            }
+        } catch (InterruptedException e) {
+            readAheadRc = RC.RC_READER_FAILED_TO_READ;
+        }
+    }
+
+    // the taken block replaces the current one, which goes back to the pool (if it is not leased)
+    private RC takeBlock() {
+        ByteSlice block;
+        try {
+            block = readBlocks.take();
+        } catch (InterruptedException e) {
+            return RC.RC_READER_FAILED_TO_READ;
+        }
+        slice.release();
+        slice = block;
+        sizeOfData = block.length;
+        if (sizeOfData > 0)
+            return RC.RC_SUCCESS;
+        readBlocks = null;
+        return readAheadRc;
+    }
+
+    // blocks which are already read are dropped until the read-ahead thread finishes
+    private void stopReadAhead() {
+        if (readBlocks == null)
+            return;
+        isReadAheadStopped = true;
+        while (readBlocks != null && takeBlock().isSuccess()) {}
+        sizeOfData = 0;
+    }
+
+    @Override
+    public RC saveState(DataOutput state) {
+        try {
+            state.writeLong(position);
+        } catch (IOException e) {
+            return RC.RC_READER_FAILED_TO_READ;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    // the input is opened from its start, the passed bytes are skipped
+    @Override
+    public RC restoreState(DataInput state) {
+        try {
+            position = state.readLong();
+            // a file is skipped past its end without an error
+            if (input instanceof FileInputStream && position > ((FileInputStream) input).getChannel().size())
+                return RC_SHORT_INPUT;
+            long rest = position;
+            while (rest > 0) {
+                long skipped = input.skip(rest);
+                if (skipped <= 0)
+                    return RC_SHORT_INPUT;
+                rest -= skipped;
+            }
+        } catch (IOException e) {
+            return RC.RC_READER_FAILED_TO_READ;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private void startTuningStep() {
+        tuningBlocksCount = 0;
+        tuningBytes = 0;
+        tuningStart = System.nanoTime();
+    }
+
+    private void tune(int bytes) {
+        tuningBytes += bytes;
+        if (++tuningBlocksCount < TUNING_BLOCKS)
+            return;
+
+        double throughput = (double) tuningBytes / (System.nanoTime() - tuningStart);
+        if (throughput >= bestThroughput * TUNING_MIN_GAIN && readSize <= bufferSize / 2) {
+            bestThroughput = throughput;
+            readSize *= 2;
+            startTuningStep();
+            return;
+        }
+        // the previous size was better
+        if (throughput < bestThroughput)
+            readSize /= 2;
+        isTuning = false;
+    }
+
     @Override
     public RC setConfig(String s) {
         ConfigReader configReader = new ConfigReader(RC.RCWho.READER, new ReaderConfigGrammar());
@@ -59,18 +225,55 @@ public class Reader implements IReader {
         }
 
         String sizeStr = configReader.getParam(ReaderConfigGrammar.ConfigParams.BUFFER_SIZE.toStr());
-        try {
-            bufferSize = Integer.parseInt(sizeStr);
+        isBufferSizeAuto = sizeStr.equalsIgnoreCase(AUTO);
+        int size = DEFAULT_SIZE;
+        if (!isBufferSizeAuto) {
+            try {
+                size = Integer.parseInt(sizeStr);
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+            }
         }
-        catch (NumberFormatException e) {
-            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+
+        if (configReader.hasKey(ReaderConfigGrammar.ConfigParams.READ_AHEAD.toStr())) {
+            try {
+                readAhead = Integer.parseInt(configReader.getParam(ReaderConfigGrammar.ConfigParams.READ_AHEAD.toStr()));
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+            }
+            if (readAhead < 0)
+                return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
         }
 
-        if (bufferSize <= 0)
-            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+        return setBufferSize(size);
+    }
+
+    @Override
+    public boolean isBufferSizeAuto() {
+        return isBufferSizeAuto;
+    }
 
-        buffer = new byte[bufferSize];
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    // the queue of READ_AHEAD blocks and the block being read by the read-ahead thread
+    @Override
+    public long getMemoryUse() {
+        return readAhead > 0 ? (long) (readAhead + 1) * bufferSize : 0;
+    }
 
+    @Override
+    public RC setBufferSize(int size) {
+        if (size <= 0)
+            return RC.RC_READER_CONFIG_SEMANTIC_ERROR;
+
+        bufferSize = size;
+        pool = BufferPool.shared(bufferSize);
+        slice = pool.acquire();
         return RC.RC_SUCCESS;
     }
 
@@ -88,10 +291,26 @@ public class Reader implements IReader {
     @Override
     public IMediator getMediator(TYPE type) {
         if (type == TYPE.BYTE_ARRAY) {
-            class ByteArrayMediator implements  IMediator {
+            class ByteArrayMediator implements ILeasingMediator, IBufferMediator {
                 @Override
                 public Object getData() {
-                    return sizeOfData > 0 ? Arrays.copyOf(buffer, sizeOfData) : null;
+                    return sizeOfData > 0 ? Arrays.copyOf(slice.array, sizeOfData) : null;
+                }
+
+                @Override
+                public ByteBuffer getBuffer() {
+                    return sizeOfData > 0 ? ByteBuffer.wrap(slice.array, 0, sizeOfData).asReadOnlyBuffer() : null;
+                }
+
+                // the filled slice goes to the consumer and the next block is read into a new one
+                @Override
+                public ByteSlice lease() {
+                    if (sizeOfData <= 0)
+                        return null;
+                    ByteSlice leased = slice;
+                    leased.length = sizeOfData;
+                    slice = pool.acquire();
+                    return leased;
                 }
             }
             return new ByteArrayMediator();
@@ -103,8 +322,10 @@ public class Reader implements IReader {
                     assert(bufferSize % 2 == 0);
                     if (sizeOfData == 0)
                         return null;
-                    ByteBuffer b = ByteBuffer.wrap(Arrays.copyOf(buffer, sizeOfData));
-                    return b.asCharBuffer().array();
+                    // view buffers have no accessible array, so chars are taken from the block directly
+                    char[] data = new char[sizeOfData / Character.BYTES];
+                    ByteBuffer.wrap(slice.array, 0, sizeOfData).asCharBuffer().get(data);
+                    return data;
                 }
             }
             return new CharArrayMediator();
@@ -116,8 +337,9 @@ public class Reader implements IReader {
                     assert(bufferSize % 4 == 0);
                     if (sizeOfData == 0)
                         return null;
-                    ByteBuffer b = ByteBuffer.wrap(Arrays.copyOf(buffer, sizeOfData));
-                    return b.asIntBuffer().array();
+                    int[] data = new int[sizeOfData / Integer.BYTES];
+                    ByteBuffer.wrap(slice.array, 0, sizeOfData).asIntBuffer().get(data);
+                    return data;
                 }
             }
             return new IntArrayMediator();
@@ -2,7 +2,11 @@ package com.pipeline;
 
 public class ReaderConfigGrammar implements IConfigGrammar {
     enum ConfigParams {
-        BUFFER_SIZE ("BUFFER_SIZE");
+        BUFFER_SIZE ("BUFFER_SIZE"),
+        // used by MappedReader only
+        MAP_SIZE ("MAP_SIZE"),
+        // used by Reader only
+        READ_AHEAD ("READ_AHEAD");
 
         private final String str;
         ConfigParams(String str) {
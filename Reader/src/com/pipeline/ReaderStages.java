@@ -0,0 +1,17 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IReader;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class ReaderStages implements IStageFactory {
+    @Override
+    public Map<String, Supplier<IReader>> getReaders() {
+        Map<String, Supplier<IReader>> readers = new HashMap<>();
+        readers.put(Reader.class.getName(), Reader::new);
+        readers.put(MappedReader.class.getName(), MappedReader::new);
+        return readers;
+    }
+}
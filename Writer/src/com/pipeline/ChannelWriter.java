@@ -0,0 +1,283 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Writer which works with the output through a channel.
+// Small blocks are collected in a direct buffer of BUFFER_SIZE bytes,
+// blocks which are not smaller than the buffer are written directly.
+// The direct buffer is taken from the shared DirectBufferPool, so jobs reuse the off-heap memory
+// of the finished ones instead of leaving it to GC.
+public class ChannelWriter implements IWriter, IAutoBuffer, ICheckpointable {
+    WritableByteChannel channel;
+    // null if output is not a file, then there is nothing to force
+    FileChannel fileChannel;
+    // taken from the shared pool with the first block and given back at the end of data
+    private ByteBuffer buffer;
+    private int bufferSize;
+    private boolean isBufferSizeAuto = false;
+    private ForcePolicy forcePolicy = ForcePolicy.none();
+    // bytes written to the channel
+    private long written = 0;
+    private final TYPE[] supportedTypes = { TYPE.BYTE_ARRAY, TYPE.INT_ARRAY, TYPE.CHAR_ARRAY };
+    IMediator mediator;
+    ILeasingMediator leasingMediator;
+    IBufferMediator bufferMediator;
+    TYPE intersectType;
+
+    @Override
+    public RC setOutputStream(OutputStream outputStream) {
+        if (outputStream instanceof FileOutputStream) {
+            fileChannel = ((FileOutputStream) outputStream).getChannel();
+            channel = fileChannel;
+        }
+        else
+            channel = Channels.newChannel(outputStream);
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setConfig(String s) {
+        ConfigReader configReader = new ConfigReader(RC.RCWho.WRITER, new WriterConfigGrammar());
+        RC rc = configReader.read(s);
+        if (!rc.isSuccess())
+            return rc;
+
+        if (!configReader.hasKey(WriterConfigGrammar.ConfigParams.BUFFER_SIZE.toStr())) {
+            return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        String sizeStr = configReader.getParam(WriterConfigGrammar.ConfigParams.BUFFER_SIZE.toStr());
+        isBufferSizeAuto = sizeStr.equalsIgnoreCase(AUTO);
+        int size = DEFAULT_SIZE;
+        if (!isBufferSizeAuto) {
+            try {
+                size = Integer.parseInt(sizeStr);
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+            }
+        }
+
+        if (configReader.hasKey(WriterConfigGrammar.ConfigParams.FORCE.toStr())) {
+            forcePolicy = ForcePolicy.parse(configReader.getParam(WriterConfigGrammar.ConfigParams.FORCE.toStr()));
+            if (forcePolicy == null)
+                return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        return setBufferSize(size);
+    }
+
+    @Override
+    public boolean isBufferSizeAuto() {
+        return isBufferSizeAuto;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public RC setBufferSize(int size) {
+        // at least one int must fit in the buffer
+        if (size < Integer.BYTES)
+            return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+
+        bufferSize = size;
+        return RC.RC_SUCCESS;
+    }
+
+    // the collected bytes are written out, so the state is the length of the output
+    @Override
+    public RC saveState(DataOutput state) {
+        RC rc = flushBuffer();
+        if (!rc.isSuccess())
+            return rc;
+        try {
+            state.writeLong(written);
+        } catch (IOException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    // the output is opened for appending, bytes written after the checkpoint are cut off
+    @Override
+    public RC restoreState(DataInput state) {
+        if (fileChannel == null)
+            return new RC(RC.RCWho.WRITER, RC.RCType.CODE_CUSTOM_ERROR, "Only output to a file can be resumed");
+        try {
+            written = state.readLong();
+            if (written < 0 || written > fileChannel.size())
+                return new RC(RC.RCWho.WRITER, RC.RCType.CODE_CUSTOM_ERROR, "Output is shorter than in the saved state");
+            fileChannel.truncate(written);
+        } catch (IOException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC setProvider(IProvider iProvider) {
+        boolean isEmptyIntersect = true;
+        outerLoop: for (TYPE myType : supportedTypes) {
+            for (TYPE providerType : iProvider.getOutputTypes()) {
+                if (myType == providerType) {
+                    intersectType = myType;
+                    isEmptyIntersect = false;
+                    break outerLoop;
+                }
+            }
+        }
+        if (isEmptyIntersect)
+            return RC.RC_WRITER_TYPES_INTERSECTION_EMPTY_ERROR;
+
+        mediator = iProvider.getMediator(intersectType);
+        // big buffers go to the channel as they are, so they are preferred to leasing
+        if (mediator instanceof IBufferMediator)
+            bufferMediator = (IBufferMediator) mediator;
+        else if (mediator instanceof ILeasingMediator)
+            leasingMediator = (ILeasingMediator) mediator;
+        return RC.RC_SUCCESS;
+    }
+
+    @Override
+    public RC consume() {
+        if (bufferMediator != null) {
+            ByteBuffer block = bufferMediator.getBuffer();
+            if (block == null)
+                return finish();
+            return write(block);
+        }
+
+        if (leasingMediator != null) {
+            ByteSlice slice = leasingMediator.lease();
+            if (slice == null)
+                return finish();
+            RC rc = write(slice.array, slice.length);
+            slice.release();
+            return rc;
+        }
+
+        Object dataObj = mediator.getData();
+        if (dataObj == null)
+            return finish();
+        switch (intersectType) {
+            case BYTE_ARRAY:
+                byte[] bytes = (byte[])dataObj;
+                return write(bytes, bytes.length);
+            case INT_ARRAY:
+                return writeInts((int[])dataObj);
+            case CHAR_ARRAY:
+                return writeChars((char[])dataObj);
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC write(byte[] bytes, int length) {
+        return write(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    private void takeBuffer() {
+        if (buffer == null)
+            buffer = DirectBufferPool.shared(bufferSize).acquire();
+    }
+
+    private RC write(ByteBuffer block) {
+        takeBuffer();
+        if (block.remaining() > buffer.remaining()) {
+            RC rc = flushBuffer();
+            if (!rc.isSuccess())
+                return rc;
+        }
+        if (block.remaining() >= bufferSize)
+            return writeToChannel(block);
+
+        buffer.put(block);
+        return RC.RC_SUCCESS;
+    }
+
+    private RC writeInts(int[] ints) {
+        takeBuffer();
+        int i = 0;
+        while (i < ints.length) {
+            if (buffer.remaining() < Integer.BYTES) {
+                RC rc = flushBuffer();
+                if (!rc.isSuccess())
+                    return rc;
+            }
+            int count = Integer.min(ints.length - i, buffer.remaining() / Integer.BYTES);
+            buffer.asIntBuffer().put(ints, i, count);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            i += count;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC writeChars(char[] chars) {
+        takeBuffer();
+        int i = 0;
+        while (i < chars.length) {
+            if (buffer.remaining() < Character.BYTES) {
+                RC rc = flushBuffer();
+                if (!rc.isSuccess())
+                    return rc;
+            }
+            int count = Integer.min(chars.length - i, buffer.remaining() / Character.BYTES);
+            buffer.asCharBuffer().put(chars, i, count);
+            buffer.position(buffer.position() + count * Character.BYTES);
+            i += count;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC flushBuffer() {
+        if (buffer == null || buffer.position() == 0)
+            return RC.RC_SUCCESS;
+        buffer.flip();
+        RC rc = writeToChannel(buffer);
+        buffer.clear();
+        return rc;
+    }
+
+    private RC writeToChannel(ByteBuffer data) {
+        try {
+            int length = data.remaining();
+            while (data.hasRemaining())
+                written += channel.write(data);
+            if (forcePolicy.isDue(length) && fileChannel != null)
+                fileChannel.force(false);
+        } catch (IOException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC finish() {
+        RC rc = flushBuffer();
+        if (!rc.isSuccess())
+            return rc;
+        if (buffer != null) {
+            DirectBufferPool.shared(bufferSize).release(buffer);
+            buffer = null;
+        }
+        if (forcePolicy.isForcedAtEnd() && fileChannel != null) {
+            try {
+                fileChannel.force(false);
+            } catch (IOException e) {
+                return RC.RC_WRITER_FAILED_TO_WRITE;
+            }
+        }
+        return RC.RC_SUCCESS;
+    }
+}
@@ -0,0 +1,56 @@
+package com.pipeline;
+
+// When a writer forces its output file to the disk, FORCE in the writer config:
+//     NONE - never, END - once at the end of data, ALWAYS - after every write,
+//     a number - after every that many megabytes and at the end of data.
+class ForcePolicy {
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    // bytes written between two forces
+    private final long interval;
+    private final boolean isForcedAtEnd;
+    private long unforced = 0;
+
+    private ForcePolicy(long interval, boolean isForcedAtEnd) {
+        this.interval = interval;
+        this.isForcedAtEnd = isForcedAtEnd;
+    }
+
+    static ForcePolicy none() {
+        return new ForcePolicy(NEVER, false);
+    }
+
+    // null if the value is not valid
+    static ForcePolicy parse(String str) {
+        if (str.equalsIgnoreCase("NONE"))
+            return none();
+        if (str.equalsIgnoreCase("END"))
+            return new ForcePolicy(NEVER, true);
+        if (str.equalsIgnoreCase("ALWAYS"))
+            return new ForcePolicy(0, true);
+        try {
+            long megabytes = Long.parseLong(str);
+            if (megabytes <= 0 || megabytes > NEVER / MEGABYTE)
+                return null;
+            return new ForcePolicy(megabytes * MEGABYTE, true);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    boolean isForcedAtEnd() {
+        return isForcedAtEnd;
+    }
+
+    // counts the written bytes, true if the output must be forced now
+    boolean isDue(long written) {
+        if (interval == NEVER)
+            return false;
+        unforced += written;
+        if (unforced < interval)
+            return false;
+        unforced = 0;
+        return true;
+    }
+}
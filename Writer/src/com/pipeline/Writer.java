@@ -2,19 +2,44 @@ package com.pipeline;
 
 import com.java_polytech.pipeline_interfaces.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+public class Writer implements IWriter, IAutoBuffer, ICheckpointable {
+    private static final Object END_OF_STREAM = new Object();
 
-public class Writer implements IWriter {
     OutputStream output;
+    // with WRITE_BEHIND blocks filled buffers go to a background thread through a queue of that many buffers,
+    // the thread writes all buffers it finds in the queue at once and forces the output by FORCE
+    private int writeBehind = 0;
+    private BlockingQueue<Object> writeQueue;
+    private Thread writeThread;
+    // the first error of the background thread, returned by the next consume()
+    private volatile RC writeBehindRc = RC.RC_SUCCESS;
+    private ForcePolicy forcePolicy = ForcePolicy.none();
+    // taken from the shared pool with the first block and given back at the end of data
+    private ByteSlice slice;
     private byte[] buffer;
     private int bufferSize;
+    private boolean isBufferSizeAuto = false;
     private int bufferIndex = 0;
+    // bytes written to the output
+    private long written = 0;
     private final TYPE[] supportedTypes = { TYPE.BYTE_ARRAY, TYPE.INT_ARRAY, TYPE.CHAR_ARRAY };
     IMediator mediator;
+    ILeasingMediator leasingMediator;
+    IBufferMediator bufferMediator;
     TYPE intersectType;
 
     @Override
@@ -35,18 +60,92 @@ public class Writer implements IWriter {
         }
 
         String sizeStr = configReader.getParam(WriterConfigGrammar.ConfigParams.BUFFER_SIZE.toStr());
-        try {
-            bufferSize = Integer.parseInt(sizeStr);
+        isBufferSizeAuto = sizeStr.equalsIgnoreCase(AUTO);
+        int size = DEFAULT_SIZE;
+        if (!isBufferSizeAuto) {
+            try {
+                size = Integer.parseInt(sizeStr);
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+            }
         }
-        catch (NumberFormatException e) {
-            return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+
+        if (configReader.hasKey(WriterConfigGrammar.ConfigParams.FORCE.toStr())) {
+            forcePolicy = ForcePolicy.parse(configReader.getParam(WriterConfigGrammar.ConfigParams.FORCE.toStr()));
+            if (forcePolicy == null)
+                return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
         }
 
-        if (bufferSize <= 0)
+        if (configReader.hasKey(WriterConfigGrammar.ConfigParams.WRITE_BEHIND.toStr())) {
+            try {
+                writeBehind = Integer.parseInt(configReader.getParam(WriterConfigGrammar.ConfigParams.WRITE_BEHIND.toStr()));
+            }
+            catch (NumberFormatException e) {
+                return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+            }
+            if (writeBehind < 0)
+                return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
+        }
+
+        return setBufferSize(size);
+    }
+
+    @Override
+    public boolean isBufferSizeAuto() {
+        return isBufferSizeAuto;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    // WRITE_BEHIND slices in the queue and as many taken from it which the background thread is writing
+    @Override
+    public long getMemoryUse() {
+        return 2L * writeBehind * bufferSize;
+    }
+
+    @Override
+    public RC setBufferSize(int size) {
+        if (size <= 0)
             return RC.RC_WRITER_CONFIG_SEMANTIC_ERROR;
 
-        buffer = new byte[bufferSize];
+        bufferSize = size;
+        return RC.RC_SUCCESS;
+    }
 
+    // the collected bytes are written out, so the state is the length of the output
+    @Override
+    public RC saveState(DataOutput state) {
+        RC rc = writeBuffer();
+        if (rc.isSuccess())
+            rc = awaitWritten();
+        if (!rc.isSuccess())
+            return rc;
+        try {
+            state.writeLong(written);
+        } catch (IOException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    // the output is opened for appending, bytes written after the checkpoint are cut off
+    @Override
+    public RC restoreState(DataInput state) {
+        if (!(output instanceof FileOutputStream))
+            return new RC(RC.RCWho.WRITER, RC.RCType.CODE_CUSTOM_ERROR, "Only output to a file can be resumed");
+        try {
+            written = state.readLong();
+            FileChannel channel = ((FileOutputStream) output).getChannel();
+            if (written < 0 || written > channel.size())
+                return new RC(RC.RCWho.WRITER, RC.RCType.CODE_CUSTOM_ERROR, "Output is shorter than in the saved state");
+            channel.truncate(written);
+        } catch (IOException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
         return RC.RC_SUCCESS;
     }
 
@@ -66,19 +165,40 @@ public class Writer implements IWriter {
             return RC.RC_EXECUTOR_TYPES_INTERSECTION_EMPTY_ERROR;
 
         mediator = iProvider.getMediator(intersectType);
+        // buffers are copied straight into the output buffer, so they are preferred to leasing
+        if (mediator instanceof IBufferMediator)
+            bufferMediator = (IBufferMediator) mediator;
+        else if (mediator instanceof ILeasingMediator)
+            leasingMediator = (ILeasingMediator) mediator;
         return RC.RC_SUCCESS;
     }
 
     @Override
     public RC consume() {
+        if (bufferMediator != null) {
+            ByteBuffer block = bufferMediator.getBuffer();
+            if (block == null)
+                return flush();
+            return write(block);
+        }
+
+        if (leasingMediator != null) {
+            ByteSlice slice = leasingMediator.lease();
+            if (slice == null)
+                return flush();
+            RC rc = write(slice.array, slice.length);
+            slice.release();
+            return rc;
+        }
+
         Object dataObj = mediator.getData();
         byte[] bytesForOutput = null;
         switch (intersectType) {
             case BYTE_ARRAY:
-                bytesForOutput = (byte[])mediator.getData();
+                bytesForOutput = (byte[])dataObj;
                 break;
             case INT_ARRAY:
-                int[] intArr = (int[])mediator.getData();
+                int[] intArr = (int[])dataObj;
                 if (intArr != null) {
                     ByteBuffer byteBuffer = ByteBuffer.allocate(intArr.length * Integer.BYTES);
                     IntBuffer intBuffer = byteBuffer.asIntBuffer();
@@ -87,7 +207,7 @@ public class Writer implements IWriter {
                 }
                 break;
             case CHAR_ARRAY:
-                char[] charArr = (char[])mediator.getData();
+                char[] charArr = (char[])dataObj;
                 if (charArr != null) {
                     ByteBuffer byteBuffer = ByteBuffer.allocate(charArr.length * Character.BYTES);
                     CharBuffer charBuffer = byteBuffer.asCharBuffer();
@@ -96,26 +216,221 @@ public class Writer implements IWriter {
                 }
                 break;
         }
-        if (bytesForOutput == null) {
-            if (bufferIndex != 0) {
+        if (bytesForOutput == null)
+            return flush();
+        return write(bytesForOutput, bytesForOutput.length);
+    }
+
+    private void takeBuffer() {
+        if (slice == null) {
+            slice = BufferPool.shared(bufferSize).acquire();
+            buffer = slice.array;
+        }
+        if (writeBehind > 0 && writeThread == null) {
+            writeQueue = new ArrayBlockingQueue<>(writeBehind);
+            writeThread = new Thread(this::writeBehind, "pipeline-write-behind");
+            // the thread is joined at the end of data, it must not keep the process alive after a failed pipeline
+            writeThread.setDaemon(true);
+            writeThread.start();
+        }
+    }
+
+    private RC writeBuffer() {
+        if (bufferIndex == 0)
+            return writeBehindRc;
+        if (writeThread != null) {
+            // the filled slice goes to the background thread and the next block is collected in a new one
+            int length = bufferIndex;
+            slice.length = length;
+            bufferIndex = 0;
+            try {
+                writeQueue.put(slice);
+            } catch (InterruptedException e) {
+                // the block is lost, so the output does not grow
+                slice.release();
+                slice = null;
+                buffer = null;
+                return RC.RC_WRITER_FAILED_TO_WRITE;
+            }
+            // the queued slice is given back by the background thread, which drops it after an error
+            slice = BufferPool.shared(bufferSize).acquire();
+            buffer = slice.array;
+            if (!writeBehindRc.isSuccess())
+                return writeBehindRc;
+            written += length;
+            return RC.RC_SUCCESS;
+        }
+
+        try {
+            output.write(buffer, 0, bufferIndex);
+            if (forcePolicy.isDue(bufferIndex))
+                force();
+        } catch (IOException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        written += bufferIndex;
+        bufferIndex = 0;
+        return RC.RC_SUCCESS;
+    }
+
+    private RC putToWrite(Object block) {
+        try {
+            writeQueue.put(block);
+        } catch (InterruptedException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        return writeBehindRc;
+    }
+
+    // waits until the background thread writes everything that is given to it
+    private RC awaitWritten() {
+        if (writeThread == null)
+            return RC.RC_SUCCESS;
+        CountDownLatch isWritten = new CountDownLatch(1);
+        RC rc = putToWrite(isWritten);
+        try {
+            isWritten.await();
+        } catch (InterruptedException e) {
+            return RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        return rc.isSuccess() ? writeBehindRc : rc;
+    }
+
+    private void force() throws IOException {
+        output.flush();
+        if (output instanceof FileOutputStream)
+            ((FileOutputStream) output).getChannel().force(false);
+    }
+
+    // background thread of WRITE_BEHIND, after an error the blocks are dropped until the end of stream
+    private void writeBehind() {
+        FileChannel channel = output instanceof FileOutputStream ? ((FileOutputStream) output).getChannel() : null;
+        ArrayList<Object> blocks = new ArrayList<>();
+        ArrayList<ByteSlice> slices = new ArrayList<>();
+        while (true) {
+            try {
+                blocks.add(writeQueue.take());
+            } catch (InterruptedException e) {
+                writeBehindRc = RC.RC_WRITER_FAILED_TO_WRITE;
+                return;
+            }
+            writeQueue.drainTo(blocks);
+
+            for (Object block : blocks) {
+                if (block instanceof ByteSlice) {
+                    slices.add((ByteSlice) block);
+                    continue;
+                }
+                writeSlices(channel, slices);
+                if (block instanceof CountDownLatch) {
+                    ((CountDownLatch) block).countDown();
+                    continue;
+                }
+                // the end of stream
                 try {
-                    output.write(buffer, 0, bufferIndex);
+                    if (writeBehindRc.isSuccess() && forcePolicy.isForcedAtEnd())
+                        force();
                 } catch (IOException e) {
-                    return RC.RC_WRITER_FAILED_TO_WRITE;
+                    writeBehindRc = RC.RC_WRITER_FAILED_TO_WRITE;
                 }
+                return;
             }
-            return RC.RC_SUCCESS;
+            writeSlices(channel, slices);
+            blocks.clear();
         }
+    }
+
+    // the slices are written by one gathering write if the output is a file
+    private void writeSlices(FileChannel channel, ArrayList<ByteSlice> slices) {
+        if (slices.isEmpty())
+            return;
+        try {
+            if (writeBehindRc.isSuccess()) {
+                long length = 0;
+                if (channel != null) {
+                    ByteBuffer[] buffers = new ByteBuffer[slices.size()];
+                    for (int i = 0; i < buffers.length; ++i) {
+                        buffers[i] = ByteBuffer.wrap(slices.get(i).array, 0, slices.get(i).length);
+                        length += slices.get(i).length;
+                    }
+                    long rest = length;
+                    while (rest > 0)
+                        rest -= channel.write(buffers);
+                } else {
+                    for (ByteSlice slice : slices) {
+                        output.write(slice.array, 0, slice.length);
+                        length += slice.length;
+                    }
+                }
+                if (forcePolicy.isDue(length))
+                    force();
+            }
+        } catch (IOException e) {
+            writeBehindRc = RC.RC_WRITER_FAILED_TO_WRITE;
+        }
+        for (ByteSlice slice : slices)
+            slice.release();
+        slices.clear();
+    }
+
+    private RC flush() {
+        RC rc = writeBuffer();
+        if (writeThread != null) {
+            RC endRc = putToWrite(END_OF_STREAM);
+            try {
+                writeThread.join();
+            } catch (InterruptedException e) {
+                endRc = RC.RC_WRITER_FAILED_TO_WRITE;
+            }
+            writeThread = null;
+            if (rc.isSuccess())
+                rc = endRc.isSuccess() ? writeBehindRc : endRc;
+        } else if (rc.isSuccess() && forcePolicy.isForcedAtEnd()) {
+            try {
+                force();
+            } catch (IOException e) {
+                rc = RC.RC_WRITER_FAILED_TO_WRITE;
+            }
+        }
+        if (slice != null) {
+            slice.release();
+            slice = null;
+            buffer = null;
+        }
+        return rc;
+    }
+
+    private RC write(byte[] bytesForOutput, int length) {
+        if (!writeBehindRc.isSuccess())
+            return writeBehindRc;
+        takeBuffer();
         int i = 0;
-        while (i < bytesForOutput.length) {
-            buffer[bufferIndex++] = bytesForOutput[i++];
+        while (i < length) {
+            int count = Integer.min(length - i, bufferSize - bufferIndex);
+            System.arraycopy(bytesForOutput, i, buffer, bufferIndex, count);
+            bufferIndex += count;
+            i += count;
             if (bufferIndex == bufferSize) {
-                try {
-                    output.write(buffer);
-                } catch (IOException e) {
-                    return RC.RC_WRITER_FAILED_TO_WRITE;
-                }
-                bufferIndex = 0;
+                RC rc = writeBuffer();
+                if (!rc.isSuccess())
+                    return rc;
+            }
+        }
+        return RC.RC_SUCCESS;
+    }
+
+    private RC write(ByteBuffer block) {
+        if (!writeBehindRc.isSuccess())
+            return writeBehindRc;
+        takeBuffer();
+        while (block.hasRemaining()) {
+            int count = Integer.min(block.remaining(), bufferSize - bufferIndex);
+            block.get(buffer, bufferIndex, count);
+            bufferIndex += count;
+            if (bufferIndex == bufferSize) {
+                RC rc = writeBuffer();
+                if (!rc.isSuccess())
+                    return rc;
             }
         }
         return RC.RC_SUCCESS;
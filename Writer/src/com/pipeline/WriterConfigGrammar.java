@@ -4,7 +4,10 @@ import com.pipeline.IConfigGrammar;
 
 public class WriterConfigGrammar implements IConfigGrammar {
     enum ConfigParams {
-        BUFFER_SIZE ("BUFFER_SIZE");
+        BUFFER_SIZE ("BUFFER_SIZE"),
+        FORCE ("FORCE"),
+        // used by Writer only
+        WRITE_BEHIND ("WRITE_BEHIND");
 
         private final String str;
         ConfigParams(String str) {
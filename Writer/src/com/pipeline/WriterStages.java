@@ -0,0 +1,17 @@
+package com.pipeline;
+
+import com.java_polytech.pipeline_interfaces.IWriter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class WriterStages implements IStageFactory {
+    @Override
+    public Map<String, Supplier<IWriter>> getWriters() {
+        Map<String, Supplier<IWriter>> writers = new HashMap<>();
+        writers.put(Writer.class.getName(), Writer::new);
+        writers.put(ChannelWriter.class.getName(), ChannelWriter::new);
+        return writers;
+    }
+}